@@ -0,0 +1,13 @@
+#!/bin/sh
+# Runs the benchmarks with GC allocation profiling and writes JMH's JSON results to benchmarks/results/<label>.json,
+# where label defaults to the current git revision. Extra arguments are passed to JMH, e.g. a benchmark name filter:
+#
+#   benchmarks/run.sh v1.2 PricingBenchmark
+set -e
+cd "$(dirname "$0")/.."
+
+label="${1:-$(git describe --always --dirty 2>/dev/null || echo local)}"
+[ $# -gt 0 ] && shift
+
+mkdir -p benchmarks/results
+java -jar benchmarks/target/benchmarks.jar -prof gc -rf json -rff "benchmarks/results/$label.json" "$@"
@@ -0,0 +1,66 @@
+package com.app.benchmarks;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolDao;
+import com.app.database.mapper.RentalAgreementRowMapper;
+import com.app.database.repository.RentalAgreementRepository;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.mapper.reflect.FieldMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Reading every agreement with the reflective field mapper the repository used to register against the hand-written
+// row mapper, over the same query on one open handle. Both report rows per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgreementMapperBenchmark {
+    private static final int ROWS = 10_000;
+    private static final String QUERY = "SELECT " + RentalAgreementRowMapper.COLUMNS + " " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id";
+
+    private final RentalAgreementRowMapper rowMapper = new RentalAgreementRowMapper();
+    private Handle handle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkDatabase.open();
+        RentalAgreementRepository repository = Database.getJdbi().onDemand(RentalAgreementRepository.class);
+        List<RentalAgreementDao> chunk = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            chunk.add(AgreementRepositoryBenchmark.createAgreement());
+        }
+        for (int inserted = 0; inserted < ROWS; inserted += chunk.size()) {
+            repository.insertBatch(chunk);
+        }
+
+        handle = Database.getJdbi().open();
+        handle.registerRowMapper(FieldMapper.factory(RentalAgreementDao.class));
+        handle.registerRowMapper(FieldMapper.factory(ToolDao.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.close();
+        BenchmarkDatabase.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<RentalAgreementDao> fieldMapper() {
+        return handle.createQuery(QUERY).mapTo(RentalAgreementDao.class).list();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<RentalAgreementDao> rowMapper() {
+        return handle.createQuery(QUERY).map(rowMapper).list();
+    }
+}
@@ -0,0 +1,95 @@
+package com.app.benchmarks;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolDao;
+import com.app.database.repository.RentalAgreementRepository;
+import com.app.services.ToolRentalService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Persistence hot paths against a temporary SQLite file. The insert benchmarks compare one autocommitted insert at a
+// time with one batched transaction per chunk; both report per agreement, so their scores compare directly. The lookup
+// benchmarks compare the repository query with the cached service lookup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgreementRepositoryBenchmark {
+    private static final int CHUNK_SIZE = 500;
+
+    private RentalAgreementRepository repository;
+    private RentalAgreementDao agreement;
+    private List<RentalAgreementDao> chunk;
+    private int[] existingIds;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkDatabase.open();
+        repository = Database.getJdbi().onDemand(RentalAgreementRepository.class);
+        agreement = createAgreement();
+        chunk = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            chunk.add(createAgreement());
+        }
+
+        existingIds = repository.insertBatch(chunk);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.close();
+    }
+
+    @Benchmark
+    public int singleInsert() {
+        return repository.insert(agreement);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public int[] batchedInsert() {
+        return repository.insertBatch(chunk);
+    }
+
+    @Benchmark
+    public RentalAgreementDao findAgreementById() {
+        nextId = (nextId + 1) % existingIds.length;
+        return repository.findAgreementById(existingIds[nextId]);
+    }
+
+    // The service lookup, answered from the agreement cache once each id has been read
+    @Benchmark
+    public RentalAgreementDao findRentalAgreementCached() {
+        nextId = (nextId + 1) % existingIds.length;
+        return ToolRentalService.findRentalAgreement(existingIds[nextId]);
+    }
+
+    public static RentalAgreementDao createAgreement() {
+        ToolDao tool = new ToolDao();
+        tool.id = 3;
+        tool.code = "JAKD";
+        tool.type = "Jackhammer";
+        tool.brand = "DeWalt";
+
+        RentalAgreementDao agreement = new RentalAgreementDao();
+        agreement.tool = tool;
+        agreement.rentalDays = 6;
+        agreement.checkoutDate = LocalDate.of(2015, 9, 3);
+        agreement.dueDate = LocalDate.of(2015, 9, 9);
+        agreement.dailyRentalChargeInCents = 299;
+        agreement.chargeDays = 3;
+        agreement.preDiscountChargeInCents = 897;
+        agreement.discountPercent = 0;
+        agreement.discountAmountInCents = 0;
+        agreement.finalChargeInCents = 897;
+        return agreement;
+    }
+}
@@ -0,0 +1,32 @@
+package com.app.benchmarks;
+
+import com.app.database.Database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Points the application at a throwaway SQLite file for the duration of a benchmark trial
+public class BenchmarkDatabase {
+    private static Path file;
+
+    public static void open() {
+        try {
+            file = Files.createTempFile("app-benchmark", ".db");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.setProperty("db.url", "jdbc:sqlite:" + file);
+        Database.setup();
+    }
+
+    public static void close() {
+        Database.closeConnection();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
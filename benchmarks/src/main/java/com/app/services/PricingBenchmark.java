@@ -0,0 +1,118 @@
+package com.app.services;
+
+import com.app.benchmarks.AgreementRepositoryBenchmark;
+import com.app.benchmarks.BenchmarkDatabase;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolTypeChargesDao;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Pricing and calendar hot paths. Lives in com.app.services to reach the package-private calendar and charge-day code.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+    // A power of two, so the rotating index can be masked
+    private static final int DATE_COUNT = 4096;
+
+    private HolidayCalendar calendar;
+    private ToolTypeChargesDao charges;
+    private LocalDate[] dates;
+    private int nextDate;
+    private RentalAgreementDao agreement;
+    private final StringBuilder buffer = new StringBuilder(512);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkDatabase.open();
+        calendar = HolidayCalendar.forName(HolidayCalendar.DEFAULT_CALENDAR);
+
+        charges = new ToolTypeChargesDao();
+        charges.toolType = "Jackhammer";
+        charges.dailyChargeInCents = 299;
+        charges.hasWeekdayCharge = true;
+
+        // Checkout dates spread over a decade, so both the calendar and charge-day benchmarks see every year's table
+        dates = new LocalDate[DATE_COUNT];
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < DATE_COUNT; i++) {
+            dates[i] = start.plusDays((i * 7919L) % 3653);
+        }
+
+        agreement = AgreementRepositoryBenchmark.createAgreement();
+        agreement.id = 12345;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ChargeDayIndex index = calendar.getChargeDayIndex();
+        System.out.printf("%nCharge day index: %d KB, built in %.1f ms%n", index.getMemoryBytes() / 1024,
+                index.getBuildNanos() / 1e6);
+        BenchmarkDatabase.close();
+    }
+
+    @Benchmark
+    public boolean isHoliday() {
+        return calendar.isHoliday(nextDate());
+    }
+
+    // Kept in its own state so only the charge-day benchmark is repeated for each rental length
+    @State(Scope.Benchmark)
+    public static class RentalLength {
+        @Param({"1", "7", "30", "365", "3650"})
+        public int rentalDays;
+    }
+
+    @Benchmark
+    public int getChargeDays(RentalLength rentalLength) {
+        LocalDate checkoutDate = nextDate();
+        return ToolRentalService.getChargeDays(charges, calendar, checkoutDate, checkoutDate.plusDays(rentalLength.rentalDays));
+    }
+
+    // The closed-form count that the charge day index falls back to outside its window
+    @Benchmark
+    public int countChargeDays(RentalLength rentalLength) {
+        LocalDate checkoutDate = nextDate();
+        return ToolRentalService.countChargeDays(charges, calendar, checkoutDate, checkoutDate.plusDays(rentalLength.rentalDays));
+    }
+
+    // Building a calendar's charge day index for the three default tool types, from scratch
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public ChargeDayIndex buildChargeDayIndex() {
+        ChargeDayIndex index = new ChargeDayIndex(calendar);
+        LocalDate checkoutDate = LocalDate.of(2015, 9, 3);
+        for (int mask : new int[]{ChargeDayIndex.WEEKDAY | ChargeDayIndex.HOLIDAY,
+                ChargeDayIndex.WEEKDAY | ChargeDayIndex.WEEKEND, ChargeDayIndex.WEEKDAY}) {
+            index.getChargeDays(mask, checkoutDate, checkoutDate.plusDays(5));
+        }
+        return index;
+    }
+
+    @Benchmark
+    public String formatRentalAgreement() {
+        return ToolRentalService.formatRentalAgreement(agreement);
+    }
+
+    // Renders into a reused buffer, as bulk output to a Writer does
+    @Benchmark
+    public int renderAgreement() throws IOException {
+        buffer.setLength(0);
+        AgreementRenderer.render(agreement, AgreementRenderer.Format.TEXT, buffer);
+        return buffer.length();
+    }
+
+    private LocalDate nextDate() {
+        nextDate = (nextDate + 1) & (DATE_COUNT - 1);
+        return dates[nextDate];
+    }
+}
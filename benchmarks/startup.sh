@@ -0,0 +1,34 @@
+#!/bin/sh
+# Compares cold-start wall time of one CLI checkout with and without the class data sharing archive. Build both first
+# with `mvn -Pcds package`. Usage: benchmarks/startup.sh [runs]
+set -e
+cd "$(dirname "$0")/.."
+
+runs="${1:-10}"
+db="$(mktemp -t app-startup.XXXXXX)"
+trap 'rm -f "$db" "$db-wal" "$db-shm"' EXIT
+export JAVA_OPTS="-Ddb.url=jdbc:sqlite:$db"
+
+if [ ! -f target/app.jsa ]; then
+    echo "target/app.jsa not found, build it with: mvn -Pcds package" >&2
+    exit 1
+fi
+
+# One untimed run migrates the scratch database, so every timed run starts from a current schema
+APP_CDS=off bin/app -c -tc JAKR -rd 5 -dp 10 -cd 9/3/15 > /dev/null
+
+now_ms() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+for mode in off on; do
+    total=0
+    i=0
+    while [ "$i" -lt "$runs" ]; do
+        start=$(now_ms)
+        APP_CDS=$mode bin/app -c -tc JAKR -rd 5 -dp 10 -cd 9/3/15 > /dev/null
+        total=$((total + $(now_ms) - start))
+        i=$((i + 1))
+    done
+    echo "CDS $mode: $((total / runs)) ms average over $runs checkouts"
+done
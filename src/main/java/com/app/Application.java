@@ -1,21 +1,36 @@
 package com.app;
 
+import com.app.database.AgreementAggregates;
 import com.app.database.Database;
+import com.app.database.dao.ToolTypeChargesDao;
+import com.app.metrics.Metrics;
+import com.app.server.RentalHttpServer;
+import com.app.services.AgreementRenderer;
+import com.app.services.AgreementRepricer;
+import com.app.services.BatchResult;
+import com.app.services.CheckoutRequest;
+import com.app.services.HolidayCalendar;
+import com.app.services.ToolCatalog;
 import com.app.services.ToolRentalService;
 import org.apache.commons.cli.*;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Application {
     private static final int NORMAL_EXIT = 0;
     private static final int ERROR_EXIT = 1;
 
-    static {
-        Database.setup();
-    }
-
     public static void main(String[] args) {
         int statusCode = runApplication(args);
         Database.closeConnection();
@@ -26,13 +41,40 @@ public class Application {
         Options options = getOptions();
 
         CommandLineParser parser = new DefaultParser();
+        CommandLine line = null;
         try {
-            CommandLine line = parser.parse(options, args);
+            line = parser.parse(options, args);
 
-            if (line.hasOption("checkout")) {
+            if (line.hasOption("serve")) {
+                String metricsFile = line.hasOption("metrics") ? line.getOptionValue("metrics", "") : null;
+                serve(Integer.parseInt(line.getOptionValue("serve")), metricsFile);
+            } else if (line.hasOption("batch")) {
+                batchCheckout(line.getOptionValue("batch"), line.getOptionValue("output"), line.getOptionValue("rejects"),
+                        AgreementRenderer.Format.fromName(line.getOptionValue("format", "text")));
+            } else if (line.hasOption("export")) {
+                if (line.hasOption("from") && line.hasOption("to")) {
+                    export(line.getOptionValue("tool-code"), line.getOptionValue("from"), line.getOptionValue("to"),
+                            line.getOptionValue("output"),
+                            AgreementRenderer.Format.fromName(line.getOptionValue("format", "csv")));
+                } else {
+                    System.out.println("Missing required options for export.");
+                    printUsage(options);
+                }
+            } else if (line.hasOption("reprice")) {
+                if (line.hasOption("from") && line.hasOption("to")) {
+                    reprice(line.getOptionValue("reprice"), line.getOptionValue("from"), line.getOptionValue("to"),
+                            line.getOptionValue("holiday-calendar", HolidayCalendar.DEFAULT_CALENDAR));
+                } else {
+                    System.out.println("Missing required options for reprice.");
+                    printUsage(options);
+                }
+            } else if (line.hasOption("rebuild-aggregates")) {
+                rebuildAggregates();
+            } else if (line.hasOption("checkout")) {
                 if (hasCheckoutArgs(line)) {
                     checkout(line.getOptionValue("tool-code"), line.getOptionValue("rental-days"),
-                            line.getOptionValue("discount-percent"), line.getOptionValue("checkout-date"));
+                            line.getOptionValue("discount-percent"), line.getOptionValue("checkout-date"),
+                            line.getOptionValue("holiday-calendar", HolidayCalendar.DEFAULT_CALENDAR));
                 } else {
                     System.out.println("Missing required options for checkout.");
                     printUsage(options);
@@ -53,6 +95,11 @@ public class Application {
             return processError("Error parsing date: " + ex.getMessage());
         } catch (Exception ex) {
             return processError("Error: " + ex.getMessage());
+        } finally {
+            // The server writes its metrics once it has stopped instead
+            if (line != null && line.hasOption("metrics") && !line.hasOption("serve")) {
+                writeMetrics(line.getOptionValue("metrics", ""));
+            }
         }
 
         return NORMAL_EXIT;
@@ -71,7 +118,7 @@ public class Application {
         Option checkout = new Option("c", "checkout", false, "Perform a checkout");
         options.addOption(checkout);
 
-        Option toolCode = new Option("tc", "tool-code", true, "Required for checkout: Tool code");
+        Option toolCode = new Option("tc", "tool-code", true, "Required for checkout, optional for export: Tool code");
         options.addOption(toolCode);
 
         Option rentalDays = new Option("rd", "rental-days", true, "Required for checkout: Number of rental days (number, minimum of 1)");
@@ -83,12 +130,49 @@ public class Application {
         Option checkoutDate = new Option("cd", "checkout-date", true, "Required for checkout: Checkout date (mm/dd/yy)");
         options.addOption(checkoutDate);
 
+        Option holidayCalendar = new Option("hc", "holiday-calendar", true, "Optional for checkout and reprice: Holiday calendar name (defaults to " + HolidayCalendar.DEFAULT_CALENDAR + ")");
+        options.addOption(holidayCalendar);
+
         Option view = new Option("v", "view", false, "View a rental agreement");
         options.addOption(view);
 
         Option agreementId = new Option("id", "agreement-id", true, "Required for view: id of rental agreement to view");
         options.addOption(agreementId);
 
+        Option batch = new Option("b", "batch", true, "Check out every record in a CSV (tool_code,rental_days,discount_percent,checkout_date[,holiday_calendar]) or JSON Lines (.jsonl) file");
+        options.addOption(batch);
+
+        Option output = new Option("o", "output", true, "Optional for batch and export: File to write agreements to (defaults to standard output)");
+        options.addOption(output);
+
+        Option rejects = new Option("rj", "rejects", true, "Optional for batch: File to write rejected records to (defaults to <batch file>.rejects)");
+        options.addOption(rejects);
+
+        Option format = new Option("f", "format", true, "Optional for batch and export: Agreement output format, text, json or jsonl (one object per line) or csv (defaults to text for batch, csv for export)");
+        options.addOption(format);
+
+        Option export = new Option("e", "export", false, "Export agreements checked out between two dates, in checkout date order");
+        options.addOption(export);
+
+        Option from = new Option("fd", "from", true, "Required for export and reprice: First checkout date to include (mm/dd/yy)");
+        options.addOption(from);
+
+        Option to = new Option("td", "to", true, "Required for export and reprice: Last checkout date to include (mm/dd/yy)");
+        options.addOption(to);
+
+        Option reprice = new Option("rp", "reprice", true, "Price agreements checked out between two dates again with the charges in a CSV file (tool_type,daily_charge_in_cents,weekday_charge,weekend_charge,holiday_charge) and report the differences by tool type, saving nothing");
+        options.addOption(reprice);
+
+        Option rebuildAggregates = new Option("ra", "rebuild-aggregates", false, "Recompute the revenue and utilization totals from every agreement");
+        options.addOption(rebuildAggregates);
+
+        Option serve = new Option("s", "serve", true, "Run as an HTTP server on the given port (POST /checkout, GET /agreements/{id}, /quote, /revenue, /utilization, /availability, /next-available)");
+        options.addOption(serve);
+
+        Option metrics = new Option("m", "metrics", true, "Optional for any command: On exit, write metrics in Prometheus text format to the given file (defaults to standard error)");
+        metrics.setOptionalArg(true);
+        options.addOption(metrics);
+
         return options;
     }
 
@@ -97,12 +181,203 @@ public class Application {
                 line.hasOption("discount-percent") && line.hasOption("checkout-date");
     }
 
-    private static void checkout(String toolCode, String rentalDays, String discountPercent, String checkoutDate) {
+    private static void checkout(String toolCode, String rentalDays, String discountPercent, String checkoutDate,
+                                 String holidayCalendar) {
         String agreement = ToolRentalService.checkout(toolCode, Integer.parseInt(rentalDays),
-                Integer.parseInt(discountPercent), formatDate(checkoutDate));
+                Integer.parseInt(discountPercent), formatDate(checkoutDate), holidayCalendar);
         System.out.println(agreement);
     }
 
+    private static void batchCheckout(String inputFile, String outputFile, String rejectsFile,
+                                      AgreementRenderer.Format format) throws IOException {
+        Path input = Path.of(inputFile);
+        Path rejectsPath = Path.of(rejectsFile != null ? rejectsFile : inputFile + ".rejects");
+
+        ToolCatalog.preload();
+
+        Writer out = openOutput(outputFile);
+        // Text agreements are separated by a blank line, JSON and CSV records by a newline
+        String separator = format == AgreementRenderer.Format.TEXT ? "\n\n" : "\n";
+        try (RejectWriter rejects = new RejectWriter(rejectsPath);
+             CheckoutRequestReader requests = new CheckoutRequestReader(input, rejects)) {
+            if (format == AgreementRenderer.Format.CSV) {
+                out.write(AgreementRenderer.CSV_HEADER);
+                out.write(separator);
+            }
+            BatchResult result = ToolRentalService.checkoutAll(requests, agreement -> {
+                try {
+                    AgreementRenderer.render(agreement, format, out);
+                    out.write(separator);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, rejects::reject);
+
+            System.err.printf("Batch complete: %d agreements created, %d rejected (see %s)%n",
+                    result.accepted(), rejects.getCount(), rejects.getFile());
+        } finally {
+            closeOutput(out, outputFile);
+        }
+    }
+
+    private static void export(String toolCode, String from, String to, String outputFile,
+                               AgreementRenderer.Format format) throws IOException {
+        LocalDate fromDate = formatDate(from);
+        LocalDate toDate = formatDate(to);
+
+        Writer out = openOutput(outputFile);
+        String separator = format == AgreementRenderer.Format.TEXT ? "\n\n" : "\n";
+        try {
+            if (format == AgreementRenderer.Format.CSV) {
+                out.write(AgreementRenderer.CSV_HEADER);
+                out.write(separator);
+            }
+            int count = ToolRentalService.exportAgreements(toolCode, fromDate, toDate, agreement -> {
+                try {
+                    AgreementRenderer.render(agreement, format, out);
+                    out.write(separator);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            System.err.printf("Export complete: %d agreements written%n", count);
+        } finally {
+            closeOutput(out, outputFile);
+        }
+    }
+
+    private static void reprice(String ratesFile, String from, String to, String holidayCalendar) throws IOException {
+        List<ToolTypeChargesDao> rates = readRates(Path.of(ratesFile));
+        int threads = getThreadCount("reprice.threads");
+
+        long started = System.nanoTime();
+        AgreementRepricer.RepricingResult result = AgreementRepricer.reprice(rates, formatDate(from), formatDate(to),
+                holidayCalendar, threads);
+
+        String row = "%-12s %12s %12s %12s %18s %18s %16s%n";
+        System.out.printf(row, "Tool type", "Agreements", "Charge days", "Repriced", "Charged", "Repriced",
+                "Difference");
+        long charged = 0;
+        long repriced = 0;
+        for (AgreementRepricer.ToolTypeDelta delta : result.toolTypes()) {
+            System.out.printf(row, delta.toolType(), delta.agreements(), delta.chargeDays(), delta.repricedChargeDays(),
+                    AgreementRenderer.formatDollars(delta.finalChargeInCents()),
+                    AgreementRenderer.formatDollars(delta.repricedFinalChargeInCents()),
+                    AgreementRenderer.formatDollars(delta.differenceInCents()));
+            charged += delta.finalChargeInCents();
+            repriced += delta.repricedFinalChargeInCents();
+        }
+        System.out.printf(row, "Total", result.agreements(), "", "", AgreementRenderer.formatDollars(charged),
+                AgreementRenderer.formatDollars(repriced), AgreementRenderer.formatDollars(repriced - charged));
+
+        System.err.printf("Repriced %d agreements on %d threads in %d ms%n", result.agreements(), result.threads(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // One CSV line per tool type whose charges change, in the columns of tool_type_charges; a header line is optional
+    private static List<ToolTypeChargesDao> readRates(Path file) throws IOException {
+        List<ToolTypeChargesDao> rates = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || (i == 0 && line.startsWith("tool_type"))) {
+                continue;
+            }
+
+            String[] fields = line.split(",", -1);
+            if (fields.length != 5) {
+                throw new IllegalArgumentException(String.format("Line %d of %s must have 5 fields: tool_type," +
+                        "daily_charge_in_cents,weekday_charge,weekend_charge,holiday_charge.", i + 1, file));
+            }
+            ToolTypeChargesDao charges = new ToolTypeChargesDao();
+            charges.toolType = fields[0].strip();
+            charges.dailyChargeInCents = Integer.parseInt(fields[1].strip());
+            charges.hasWeekdayCharge = parseFlag(fields[2], i + 1, file);
+            charges.hasWeekendCharge = parseFlag(fields[3], i + 1, file);
+            charges.hasHolidayCharge = parseFlag(fields[4], i + 1, file);
+            rates.add(charges);
+        }
+        return rates;
+    }
+
+    private static boolean parseFlag(String field, int lineNumber, Path file) {
+        return switch (field.strip().toLowerCase()) {
+            case "true", "1" -> true;
+            case "false", "0" -> false;
+            default -> throw new IllegalArgumentException(String.format("Line %d of %s: %s is not true or false.",
+                    lineNumber, file, field.strip()));
+        };
+    }
+
+    private static void rebuildAggregates() {
+        int threads = getThreadCount("aggregates.rebuild_threads");
+
+        long started = System.nanoTime();
+        AgreementAggregates.RebuildResult result = AgreementAggregates.rebuild(threads);
+        System.err.printf("Rebuilt aggregates from %d agreements on %d threads in %d ms%n", result.agreements(),
+                result.threads(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // One thread per processor when the property is 0. Never more than there are pooled read connections to read on,
+    // since a thread beyond those would wait db.pool.timeout_ms for one and then fail.
+    private static int getThreadCount(String property) {
+        int threads = Integer.parseInt(Database.getProperty(property, "0"));
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return Math.min(threads, Database.getReadPoolSize());
+    }
+
+    // Standard output is flushed rather than closed so later output still works
+    private static Writer openOutput(String outputFile) throws IOException {
+        return outputFile != null
+                ? Files.newBufferedWriter(Path.of(outputFile), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    }
+
+    private static void closeOutput(Writer out, String outputFile) throws IOException {
+        if (outputFile != null) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+
+    // Blocks until the JVM is asked to shut down; the shutdown hook drains in-flight requests, closes the database and
+    // writes metrics when metricsFile is not null
+    private static void serve(int port, String metricsFile) throws IOException, InterruptedException {
+        // Open the database and warm the catalog before taking traffic, rather than on the first request
+        ToolCatalog.preload();
+        if (Boolean.parseBoolean(Database.getProperty("metrics.jmx", "true"))) {
+            Metrics.registerMBean();
+        }
+        RentalHttpServer server = new RentalHttpServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (metricsFile != null) {
+                writeMetrics(metricsFile);
+            }
+        }, "http-server-shutdown"));
+        server.start();
+
+        System.out.printf("Listening on port %d%n", server.getPort());
+        server.awaitStop();
+    }
+
+    // An empty file name means standard error, keeping standard output for agreements
+    private static void writeMetrics(String file) {
+        try {
+            if (file.isEmpty()) {
+                System.err.print(Metrics.toPrometheus());
+            } else {
+                Files.writeString(Path.of(file), Metrics.toPrometheus(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
     private static void viewRentalAgreement(String id) {
         String agreement = ToolRentalService.getRentalAgreement(id);
         System.out.println(agreement);
@@ -115,8 +390,13 @@ public class Application {
                 Usage guidelines:
                   -c, -tc, -rd, -dp, -cd must be used together.
                   -v, -id must be used together.
+                  -b may be combined with -o, -rj and -f.
+                  -e, -fd, -td must be used together, and may be combined with -tc, -o and -f.
+                  -rp, -fd, -td must be used together, and may be combined with -hc.
+                  -ra takes no other options.
+                  -m may be added to any command.
                 """;
-        String customUsage = "app [-c] [-tc -rd -dp -cd] | app [-v] [-id]";
+        String customUsage = "app [-c] [-tc -rd -dp -cd] | app [-v] [-id] | app [-b] [-o -rj -f] | app [-e] [-fd -td] [-tc -o -f] | app [-rp] [-fd -td] [-hc] | app [-ra] | app [-s]";
 
         System.out.println("\n\nGenerated Help:");
         formatter.setWidth(100);
@@ -124,14 +404,6 @@ public class Application {
     }
 
     private static LocalDate formatDate(String date) {
-        String[] formats = {"M/d/yy", "M/d/yyyy"};
-
-        for (String format : formats) {
-            try {
-                return LocalDate.parse(date, DateTimeFormatter.ofPattern(format));
-            } catch (DateTimeParseException _) {
-            }
-        }
-        return LocalDate.parse(date, DateTimeFormatter.ofPattern(formats[0]));
+        return CheckoutRequest.parseDate(date);
     }
 }
@@ -0,0 +1,24 @@
+package com.app;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.services.HolidayCalendar;
+import com.app.services.ToolRentalService;
+
+import java.time.LocalDate;
+
+// Training run for the cds build profile. A class data sharing archive is written when a single JVM exits, so the
+// checkout, view and usage paths are all exercised here in one process to capture the classes each of them loads.
+public class CdsTraining {
+    public static void main(String[] args) {
+        Application.runApplication(new String[]{"-c", "-tc", "JAKR", "-rd", "5", "-dp", "10", "-cd", "9/3/15"});
+
+        RentalAgreementDao agreement = ToolRentalService.checkoutAgreement("LADW", 3, 0, LocalDate.of(2020, 7, 2),
+                HolidayCalendar.DEFAULT_CALENDAR);
+        Application.runApplication(new String[]{"-v", "-id", String.valueOf(agreement.id)});
+
+        Application.runApplication(new String[]{"-c"});
+
+        Database.closeConnection();
+    }
+}
@@ -0,0 +1,108 @@
+package com.app;
+
+import com.app.services.CheckoutRequest;
+import com.app.services.HolidayCalendar;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Streams checkout requests from a file, one record per line, without reading the whole file into memory.
+// CSV records are tool_code,rental_days,discount_percent,checkout_date and, optionally, holiday_calendar, with an
+// optional header line naming those columns. JSON Lines records are flat objects with toolCode, rentalDays,
+// discountPercent, checkoutDate and optional holidayCalendar fields. Records that cannot be parsed are passed to the
+// reject writer and skipped.
+class CheckoutRequestReader implements Iterable<CheckoutRequest>, Closeable {
+    private static final String CSV_HEADER = "tool_code,rental_days,discount_percent,checkout_date";
+    private static final String CSV_HEADER_WITH_CALENDAR = CSV_HEADER + ",holiday_calendar";
+
+    private final BufferedReader reader;
+    private final boolean jsonLines;
+    private final RejectWriter rejects;
+
+    CheckoutRequestReader(Path file, RejectWriter rejects) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        String fileName = file.getFileName().toString().toLowerCase();
+        this.jsonLines = fileName.endsWith(".jsonl") || fileName.endsWith(".json");
+        this.rejects = rejects;
+    }
+
+    @Override
+    public Iterator<CheckoutRequest> iterator() {
+        return new Iterator<>() {
+            private int lineNumber = 0;
+            private CheckoutRequest next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public CheckoutRequest next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                CheckoutRequest current = next;
+                next = advance();
+                return current;
+            }
+
+            private CheckoutRequest advance() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lineNumber += 1;
+                        if (line.isBlank() || (!jsonLines && lineNumber == 1 && isCsvHeader(line))) {
+                            continue;
+                        }
+
+                        String reference = "line " + lineNumber;
+                        try {
+                            return jsonLines ? parseJsonLine(reference, line) : parseCsvLine(reference, line);
+                        } catch (RuntimeException ex) {
+                            rejects.reject(reference, line, ex);
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Only the exact column names, so a headerless file's first record is never mistaken for a header
+    private static boolean isCsvHeader(String line) {
+        String columns = line.replace(" ", "").toLowerCase();
+        return columns.equals(CSV_HEADER) || columns.equals(CSV_HEADER_WITH_CALENDAR);
+    }
+
+    private static CheckoutRequest parseCsvLine(String reference, String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 4 && fields.length != 5) {
+            throw new IllegalArgumentException(
+                    "Expected 4 or 5 fields: tool_code,rental_days,discount_percent,checkout_date[,holiday_calendar].");
+        }
+
+        String holidayCalendar = fields.length == 5 && !fields[4].isBlank()
+                ? fields[4].trim() : HolidayCalendar.DEFAULT_CALENDAR;
+        return new CheckoutRequest(reference, fields[0].trim(), Integer.parseInt(fields[1].trim()),
+                Integer.parseInt(fields[2].trim()), CheckoutRequest.parseDate(fields[3].trim()), holidayCalendar);
+    }
+
+    private static CheckoutRequest parseJsonLine(String reference, String line) {
+        return CheckoutRequest.fromFields(reference, FlatJson.parseObject(line));
+    }
+}
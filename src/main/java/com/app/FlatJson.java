@@ -0,0 +1,116 @@
+package com.app;
+
+import com.app.services.AgreementRenderer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Minimal reader and writer for the flat JSON objects used by batch input and the HTTP API, so the application does
+// not need a JSON library
+public class FlatJson {
+    // Parses a single-level object whose values are strings, numbers, booleans or null. Values are returned as text;
+    // fields whose value is null are left out, as if they were missing.
+    public static Map<String, String> parseObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        int[] position = {skipWhitespace(json, 0)};
+        expect(json, position, '{');
+
+        if (peek(json, position) == '}') {
+            return fields;
+        }
+        while (true) {
+            String name = readString(json, position);
+            expect(json, position, ':');
+            String value = peek(json, position) == '"' ? readString(json, position) : readLiteral(json, position);
+            if (value != null) {
+                fields.put(name, value);
+            }
+
+            char separator = peek(json, position);
+            position[0] = skipWhitespace(json, position[0] + 1);
+            if (separator == '}') {
+                return fields;
+            }
+            if (separator != ',') {
+                throw new IllegalArgumentException("Malformed JSON object, expected ',' or '}'.");
+            }
+        }
+    }
+
+    private static String readString(String json, int[] position) {
+        if (peek(json, position) != '"') {
+            throw new IllegalArgumentException(String.format("Expected '\"' at position %d.", position[0]));
+        }
+        StringBuilder value = new StringBuilder();
+        int i = position[0] + 1;
+        while (i < json.length() && json.charAt(i) != '"') {
+            char c = json.charAt(i++);
+            if (c == '\\' && i < json.length()) {
+                char escaped = json.charAt(i++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 't' -> value.append('\t');
+                    case 'r' -> value.append('\r');
+                    case 'u' -> {
+                        value.append(readUnicodeEscape(json, i));
+                        i += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        if (i >= json.length()) {
+            throw new IllegalArgumentException("Unterminated JSON string.");
+        }
+        position[0] = skipWhitespace(json, i + 1);
+        return value.toString();
+    }
+
+    // The character of a unicode escape whose four hex digits start at position
+    private static char readUnicodeEscape(String json, int position) {
+        if (position + 4 > json.length()) {
+            throw new IllegalArgumentException("Incomplete \\u escape in JSON string.");
+        }
+        try {
+            return (char) Integer.parseInt(json.substring(position, position + 4), 16);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("Invalid \\u escape at position %d.", position - 2));
+        }
+    }
+
+    private static String readLiteral(String json, int[] position) {
+        int start = position[0];
+        int i = start;
+        while (i < json.length() && ",} \t".indexOf(json.charAt(i)) < 0) {
+            i++;
+        }
+        position[0] = skipWhitespace(json, i);
+        String literal = json.substring(start, i);
+        return literal.equals("null") ? null : literal;
+    }
+
+    private static void expect(String json, int[] position, char expected) {
+        if (peek(json, position) != expected) {
+            throw new IllegalArgumentException(String.format("Expected '%s' at position %d.", expected, position[0]));
+        }
+        position[0] = skipWhitespace(json, position[0] + 1);
+    }
+
+    private static char peek(String json, int[] position) {
+        return position[0] < json.length() ? json.charAt(position[0]) : '\0';
+    }
+
+    private static int skipWhitespace(String json, int position) {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    // Writes value as a JSON string literal
+    public static String quote(String value) {
+        return AgreementRenderer.quoteJson(value);
+    }
+}
@@ -0,0 +1,64 @@
+package com.app;
+
+import com.app.services.CheckoutRequest;
+import com.app.services.HolidayCalendar;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+
+// Records rejected batch input as tab-separated lines: reference, error message, record
+class RejectWriter implements Closeable {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy");
+
+    private final Path file;
+    private final BufferedWriter writer;
+    private int count = 0;
+
+    RejectWriter(Path file) throws IOException {
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    // Written as a batch CSV record, with the holiday calendar as a fifth field unless it is the default
+    void reject(CheckoutRequest request, Exception ex) {
+        String record = String.join(",", request.toolCode(), String.valueOf(request.rentalDays()),
+                String.valueOf(request.discountPercent()), request.checkoutDate().format(DATE_FORMAT));
+        if (!HolidayCalendar.DEFAULT_CALENDAR.equals(request.holidayCalendar())) {
+            record += "," + request.holidayCalendar();
+        }
+        reject(request.reference(), record, ex);
+    }
+
+    void reject(String reference, String record, Exception ex) {
+        try {
+            writer.write(reference);
+            writer.write('\t');
+            writer.write(String.valueOf(ex.getMessage()).replace('\n', ' ').replace('\t', ' '));
+            writer.write('\t');
+            writer.write(record);
+            writer.newLine();
+            count += 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,319 @@
+package com.app.database;
+
+import com.app.database.dao.DailyRevenueDao;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolUtilizationDao;
+import com.app.database.repository.AggregateRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// In-memory copy of the daily_revenue_by_tool_type and tool_utilization tables for dashboards. A tool type's totals
+// are held in an array indexed by day, so a day's totals are one array read and a date range one read per day,
+// however many agreements there are. Agreements count towards the day they were checked out.
+//
+// The copy is loaded on first use and updated as agreements are inserted. Both happen on the database writer thread,
+// in order with the inserts, so every agreement is counted exactly once: inserts call recordInserted from their write
+// callback. Agreements waiting in the write-behind queue or the journal are counted once they reach the table.
+public final class AgreementAggregates {
+    // Rebuilds split the agreements into more ranges than threads, so one slow range does not leave the others idle
+    private static final int RANGES_PER_THREAD = 4;
+    private static final Object lock = new Object();
+    // Guarded by lock
+    private static Snapshot snapshot;
+
+    public record Totals(long agreements, long rentalDays, long chargeDays, long finalChargeInCents) {
+        public static final Totals EMPTY = new Totals(0, 0, 0, 0);
+    }
+
+    public record RebuildResult(long agreements, int threads) {
+    }
+
+    static {
+        Database.onClose(AgreementAggregates::invalidate);
+    }
+
+    // Totals of the tool type's agreements checked out on the day
+    public static Totals getDailyRevenue(String toolType, LocalDate day) {
+        return read(current -> {
+            DailySeries series = current.revenueByToolType.get(toolType);
+            return series == null ? Totals.EMPTY : series.sum(day.toEpochDay(), day.toEpochDay());
+        });
+    }
+
+    // Totals of the agreements checked out from `from` through `to`, for every tool type with agreements, by type
+    public static Map<String, Totals> getRevenueByToolType(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The end of a revenue period must not be before its start.");
+        }
+        return read(current -> {
+            Map<String, Totals> revenue = new TreeMap<>();
+            current.revenueByToolType.forEach((toolType, series) ->
+                    revenue.put(toolType, series.sum(from.toEpochDay(), to.toEpochDay())));
+            return revenue;
+        });
+    }
+
+    // Totals of every agreement for each tool with agreements, by tool code
+    public static Map<String, Totals> getUtilizationByTool() {
+        return read(current -> {
+            Map<String, Totals> utilization = new TreeMap<>();
+            current.utilizationByTool.forEach((toolCode, totals) -> utilization.put(toolCode, totals.toTotals()));
+            return utilization;
+        });
+    }
+
+    // Drops the in-memory copy so the next query reads the tables again
+    public static void invalidate() {
+        synchronized (lock) {
+            snapshot = null;
+        }
+    }
+
+    // Called on the writer thread from the write callback that inserted the agreements, once the insert succeeded.
+    // Until the copy has been loaded there is nothing to update, since loading reads them from the tables.
+    public static void recordInserted(List<RentalAgreementDao> agreements) {
+        synchronized (lock) {
+            if (snapshot == null) {
+                return;
+            }
+            for (RentalAgreementDao agreement : agreements) {
+                snapshot.add(agreement.tool.type, agreement.checkoutDate.toEpochDay(), agreement.tool.code, 1,
+                        agreement.rentalDays, agreement.chargeDays, agreement.finalChargeInCents);
+            }
+        }
+    }
+
+    // Recomputes both tables from rental_agreements and reloads the in-memory copy. The agreements are split into id
+    // ranges that are summed in parallel on pooled read connections, threads at a time, and the sums merged. It runs
+    // as one write transaction: clearing the tables first takes SQLite's write lock, so no agreement can be inserted
+    // until the new totals are committed, and the ranges are read as last committed.
+    public static RebuildResult rebuild(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Rebuild thread count must be at least 1.");
+        }
+
+        return Database.write(handle -> {
+            Sums totals = handle.inTransaction(transaction -> rebuildTables(transaction.attach(AggregateRepository.class),
+                    threads));
+
+            // Swapped in once the new totals are committed, still on the writer thread
+            synchronized (lock) {
+                snapshot = Snapshot.of(totals.dailyRevenue(), totals.toolUtilization());
+            }
+            long agreements = totals.toolUtilization().stream().mapToLong(tool -> tool.agreements).sum();
+            return new RebuildResult(agreements, threads);
+        });
+    }
+
+    private static Sums rebuildTables(AggregateRepository repository, int threads) {
+        repository.deleteAllDailyRevenue();
+        repository.deleteAllToolUtilization();
+
+        List<int[]> ranges = splitIds(repository.getFirstAgreementId(), repository.getLastAgreementId(),
+                threads * RANGES_PER_THREAD);
+        Map<DayAndType, DailyRevenueDao> dailyRevenue = new HashMap<>();
+        Map<Integer, ToolUtilizationDao> toolUtilization = new HashMap<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<Sums>> futures = new ArrayList<>(ranges.size());
+            for (int[] range : ranges) {
+                futures.add(executor.submit(() -> Database.getJdbi().withExtension(AggregateRepository.class,
+                        reader -> new Sums(reader.sumDailyRevenue(range[0], range[1]),
+                                reader.sumToolUtilization(range[0], range[1])))));
+            }
+            for (Future<Sums> future : futures) {
+                Sums sums = getSums(future);
+                for (DailyRevenueDao day : sums.dailyRevenue()) {
+                    dailyRevenue.merge(new DayAndType(day.checkoutDate, day.toolType), day,
+                            AgreementAggregates::addDailyRevenue);
+                }
+                for (ToolUtilizationDao tool : sums.toolUtilization()) {
+                    toolUtilization.merge(tool.toolId, tool, AgreementAggregates::addToolUtilization);
+                }
+            }
+        }
+
+        Sums totals = new Sums(new ArrayList<>(dailyRevenue.values()), new ArrayList<>(toolUtilization.values()));
+        repository.insertAllDailyRevenue(totals.dailyRevenue());
+        repository.insertAllToolUtilization(totals.toolUtilization());
+        return totals;
+    }
+
+    private static <T> T read(Function<Snapshot, T> query) {
+        synchronized (lock) {
+            if (snapshot != null) {
+                return query.apply(snapshot);
+            }
+        }
+
+        // Loaded on the writer thread, so no insert can be both read by the load and recorded after it
+        return Database.write(handle -> {
+            synchronized (lock) {
+                if (snapshot == null) {
+                    AggregateRepository repository = handle.attach(AggregateRepository.class);
+                    snapshot = Snapshot.of(repository.findAllDailyRevenue(), repository.findAllToolUtilization());
+                }
+                return query.apply(snapshot);
+            }
+        });
+    }
+
+    // Splits firstId through lastId into at most count contiguous ranges
+    private static List<int[]> splitIds(int firstId, int lastId, int count) {
+        long size = Math.max(1, ((long) lastId - firstId + count) / count);
+        List<int[]> ranges = new ArrayList<>(count);
+        for (long start = firstId; start <= lastId; start += size) {
+            ranges.add(new int[]{(int) start, (int) Math.min(lastId, start + size - 1)});
+        }
+        return ranges;
+    }
+
+    private static Sums getSums(Future<Sums> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Aggregate rebuild failed: ", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding aggregates.", e);
+        }
+    }
+
+    private static DailyRevenueDao addDailyRevenue(DailyRevenueDao total, DailyRevenueDao day) {
+        total.agreements += day.agreements;
+        total.rentalDays += day.rentalDays;
+        total.chargeDays += day.chargeDays;
+        total.finalChargeInCents += day.finalChargeInCents;
+        return total;
+    }
+
+    private static ToolUtilizationDao addToolUtilization(ToolUtilizationDao total, ToolUtilizationDao tool) {
+        total.agreements += tool.agreements;
+        total.rentalDays += tool.rentalDays;
+        total.chargeDays += tool.chargeDays;
+        total.finalChargeInCents += tool.finalChargeInCents;
+        return total;
+    }
+
+    private record DayAndType(LocalDate day, String toolType) {
+    }
+
+    private record Sums(List<DailyRevenueDao> dailyRevenue, List<ToolUtilizationDao> toolUtilization) {
+    }
+
+    private static final class Snapshot {
+        private final Map<String, DailySeries> revenueByToolType = new HashMap<>();
+        private final Map<String, Counts> utilizationByTool = new HashMap<>();
+
+        static Snapshot of(List<DailyRevenueDao> dailyRevenue, List<ToolUtilizationDao> toolUtilization) {
+            Snapshot snapshot = new Snapshot();
+            for (DailyRevenueDao day : dailyRevenue) {
+                snapshot.revenueByToolType.computeIfAbsent(day.toolType, type -> new DailySeries())
+                        .add(day.checkoutDate.toEpochDay(), day.agreements, day.rentalDays, day.chargeDays,
+                                day.finalChargeInCents);
+            }
+            for (ToolUtilizationDao tool : toolUtilization) {
+                snapshot.utilizationByTool.computeIfAbsent(tool.toolCode, code -> new Counts())
+                        .add(tool.agreements, tool.rentalDays, tool.chargeDays, tool.finalChargeInCents);
+            }
+            return snapshot;
+        }
+
+        void add(String toolType, long day, String toolCode, long agreements, long rentalDays, long chargeDays,
+                 long finalChargeInCents) {
+            revenueByToolType.computeIfAbsent(toolType, type -> new DailySeries())
+                    .add(day, agreements, rentalDays, chargeDays, finalChargeInCents);
+            utilizationByTool.computeIfAbsent(toolCode, code -> new Counts())
+                    .add(agreements, rentalDays, chargeDays, finalChargeInCents);
+        }
+    }
+
+    private static final class Counts {
+        private long agreements;
+        private long rentalDays;
+        private long chargeDays;
+        private long finalChargeInCents;
+
+        void add(long agreements, long rentalDays, long chargeDays, long finalChargeInCents) {
+            this.agreements += agreements;
+            this.rentalDays += rentalDays;
+            this.chargeDays += chargeDays;
+            this.finalChargeInCents += finalChargeInCents;
+        }
+
+        Totals toTotals() {
+            return new Totals(agreements, rentalDays, chargeDays, finalChargeInCents);
+        }
+    }
+
+    // One tool type's totals for each day from firstDay, four measures per day in one array. Grows in either
+    // direction as agreements outside the days held so far are added.
+    private static final class DailySeries {
+        private static final int MEASURES = 4;
+        private static final int INITIAL_DAYS = 366;
+
+        private long firstDay;
+        private long[] values = new long[0];
+
+        void add(long day, long agreements, long rentalDays, long chargeDays, long finalChargeInCents) {
+            ensureDay(day);
+            int offset = (int) (day - firstDay) * MEASURES;
+            values[offset] += agreements;
+            values[offset + 1] += rentalDays;
+            values[offset + 2] += chargeDays;
+            values[offset + 3] += finalChargeInCents;
+        }
+
+        Totals sum(long fromDay, long toDay) {
+            long from = Math.max(fromDay, firstDay);
+            long to = Math.min(toDay, firstDay + getDayCount() - 1);
+            long agreements = 0;
+            long rentalDays = 0;
+            long chargeDays = 0;
+            long finalChargeInCents = 0;
+            for (long day = from; day <= to; day++) {
+                int offset = (int) (day - firstDay) * MEASURES;
+                agreements += values[offset];
+                rentalDays += values[offset + 1];
+                chargeDays += values[offset + 2];
+                finalChargeInCents += values[offset + 3];
+            }
+            return new Totals(agreements, rentalDays, chargeDays, finalChargeInCents);
+        }
+
+        private int getDayCount() {
+            return values.length / MEASURES;
+        }
+
+        private void ensureDay(long day) {
+            int dayCount = getDayCount();
+            if (dayCount == 0) {
+                firstDay = day;
+                values = new long[INITIAL_DAYS * MEASURES];
+            } else if (day < firstDay) {
+                long newFirstDay = Math.min(day, firstDay - dayCount / 2);
+                long[] grown = new long[(int) (firstDay - newFirstDay + dayCount) * MEASURES];
+                System.arraycopy(values, 0, grown, (int) (firstDay - newFirstDay) * MEASURES, values.length);
+                firstDay = newFirstDay;
+                values = grown;
+            } else if (day >= firstDay + dayCount) {
+                long newDayCount = Math.max(day - firstDay + 1, dayCount + dayCount / 2);
+                long[] grown = new long[(int) newDayCount * MEASURES];
+                System.arraycopy(values, 0, grown, 0, values.length);
+                values = grown;
+            }
+        }
+    }
+}
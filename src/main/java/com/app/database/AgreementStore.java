@@ -0,0 +1,34 @@
+package com.app.database;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.RentalPeriodDao;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Where rental agreements are saved and read back, selected by agreement.store: "sqlite" writes straight to the
+// rental_agreements table, "journal" appends to a memory-mapped journal that is copied into the table periodically.
+// Obtain the configured store from Database.getAgreementStore().
+public interface AgreementStore {
+    // Saves the agreement and sets its id, which is also returned
+    int insert(RentalAgreementDao agreement);
+
+    // Saves the agreements together and sets their ids, which are also returned in order
+    int[] insertAll(List<RentalAgreementDao> agreements);
+
+    // Returns null when no agreement has the given id
+    RentalAgreementDao findById(int id);
+
+    // Rentals run from the checkout date to the due date, so one may start on the day another is due back
+    boolean hasOverlappingAgreement(int toolId, LocalDate checkoutDate, LocalDate dueDate);
+
+    // Passes the tool and period of every saved agreement to the action, in no particular order
+    void forEachRentalPeriod(Consumer<RentalPeriodDao> action);
+
+    // Makes every agreement saved so far readable from the rental_agreements table
+    void flush();
+
+    // Called by Database.closeConnection while the database can still be written
+    void close();
+}
@@ -0,0 +1,192 @@
+package com.app.database;
+
+import com.app.metrics.LatencyHistogram;
+import com.app.metrics.Metrics;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Bounded pool of SQLite connections. Connections are opened on demand up to maxSize and handed back to the pool,
+// rather than closed, when the borrower closes them.
+public class ConnectionPool implements DataSource {
+    private static final LatencyHistogram waitLatency = Metrics.latency("app_db_pool_wait_seconds",
+            "Time reads wait for a pooled connection");
+    private static final LongAdder timeouts = Metrics.counter("app_db_pool_timeouts_total",
+            "Reads that gave up waiting for a pooled connection");
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public ConnectionPool(DataSource dataSource, int maxSize, long timeoutMillis) {
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        long start = System.nanoTime();
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = openIfBelowMaxSize();
+        }
+        if (connection == null) {
+            try {
+                connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection.", e);
+            }
+            if (connection == null) {
+                timeouts.increment();
+                throw new SQLException(String.format("Timed out after %d ms waiting for a database connection.", timeoutMillis));
+            }
+        }
+
+        waitLatency.recordSince(start);
+        return wrap(connection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private Connection openIfBelowMaxSize() throws SQLException {
+        int current;
+        do {
+            current = size.get();
+            if (current >= maxSize) {
+                return null;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void release(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // A connection that cannot be reset is dropped, making room for a fresh one
+            size.decrementAndGet();
+            closeQuietly(connection);
+            return;
+        }
+
+        if (closed) {
+            size.decrementAndGet();
+            closeQuietly(connection);
+        } else {
+            idle.offer(connection);
+        }
+    }
+
+    // Hands out a view of the pooled connection whose close() returns it to the pool
+    private Connection wrap(Connection connection) {
+        AtomicInteger released = new AtomicInteger();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close" -> {
+                            if (released.getAndIncrement() == 0) {
+                                release(connection);
+                            }
+                            return null;
+                        }
+                        case "isClosed" -> {
+                            return released.get() > 0 || connection.isClosed();
+                        }
+                        default -> {
+                            if (released.get() > 0) {
+                                throw new SQLException("Connection has been returned to the pool.");
+                            }
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    }
+                });
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing database connection: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -1,58 +1,251 @@
 package com.app.database;
 
-import org.flywaydb.core.Flyway;
+import com.app.metrics.LatencyHistogram;
+import com.app.metrics.Metrics;
+import org.jdbi.v3.core.HandleCallback;
 import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.jdbi.v3.sqlobject.HandlerDecorators;
 import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+// The database is opened, migrated and wired up on first use rather than at startup, so runs that never touch it
+// (usage errors, --help) skip that cost. setup() may still be called to initialize eagerly.
 public class Database {
-    public static Connection connection;
-    public static Jdbi jdbi;
-    private static String url;
-    private static final String pathToMigrationFile = "filesystem:src/main/resources/db/migration";
+    private static volatile Connection connection;
+    // Reads go through jdbi, which draws from a bounded connection pool. Writes go through write(), which queues them
+    // onto the single writer connection.
+    private static volatile Jdbi jdbi;
+    private static SQLiteDataSource dataSource;
+    private static ConnectionPool readPool;
+    private static DatabaseWriter writer;
+    private static volatile AgreementStore agreementStore;
+    private static final Properties properties = loadProperties();
+    private static final LatencyHistogram setupLatency = Metrics.latency("app_database_setup_seconds",
+            "Time to open, migrate and wire up the database");
+    private static final LatencyHistogram migrationLatency = Metrics.latency("app_schema_migration_seconds",
+            "Time to check the schema and apply any pending migrations");
+    private static final RepositoryMetrics repositoryMetrics = new RepositoryMetrics();
+    private static final List<Runnable> beforeCloseListeners = new CopyOnWriteArrayList<>();
+    private static final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
 
-    public static void setup() {
+    public static synchronized void setup() {
+        if (jdbi != null) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        Connection sharedConnection = null;
+        Connection writerConnection = null;
         try {
-            Properties properties = new Properties();
-            InputStream inputStream = Database.class.getClassLoader().getResourceAsStream("application.properties");
-            properties.load(inputStream);
-            url = properties.getProperty("db.url");
+            dataSource = createDataSource(getProperty("db.url", null));
+            sharedConnection = dataSource.getConnection();
 
-            connection = DriverManager.getConnection(url);
-            connection.createStatement().execute("PRAGMA foreign_keys = ON;");
+            long migrationStarted = System.nanoTime();
+            SchemaMigrator.migrate(dataSource, sharedConnection);
+            migrationLatency.recordSince(migrationStarted);
 
-            migrateDatabase();
+            readPool = new ConnectionPool(dataSource, getReadPoolSize(),
+                    Long.parseLong(getProperty("db.pool.timeout_ms", "30000")));
+            writerConnection = dataSource.getConnection();
+            writer = new DatabaseWriter(configureJdbi(Jdbi.create(writerConnection)), writerConnection);
 
-            jdbi = Jdbi.create(url, "", "");
-            jdbi.installPlugin(new SqlObjectPlugin());
-        } catch (SQLException | IOException e) {
+            connection = sharedConnection;
+            jdbi = configureJdbi(Jdbi.create(readPool));
+        } catch (SQLException e) {
+            closeAfterFailedSetup(sharedConnection, writerConnection);
             System.out.println("Error: " + e.getMessage());
             throw new RuntimeException("Error during database setup: ", e);
+        } catch (RuntimeException e) {
+            // e.g. a FlywayException from a migration that failed or no longer matches its recorded checksum
+            closeAfterFailedSetup(sharedConnection, writerConnection);
+            throw e;
+        } finally {
+            setupLatency.recordSince(started);
+        }
+    }
+
+    // Releases whatever a failed setup() opened, so the next use starts again from nothing
+    private static void closeAfterFailedSetup(Connection sharedConnection, Connection writerConnection) {
+        if (writer != null) {
+            // Closes the writer connection along with the writer thread
+            writer.close();
+            writer = null;
+        } else {
+            closeQuietly(writerConnection);
+        }
+        if (readPool != null) {
+            readPool.close();
+            readPool = null;
+        }
+        closeQuietly(sharedConnection);
+        dataSource = null;
+    }
+
+    private static void closeQuietly(Connection opened) {
+        if (opened != null) {
+            try {
+                opened.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing database connection: " + e.getMessage());
+            }
+        }
+    }
+
+    public static Jdbi getJdbi() {
+        Jdbi current = jdbi;
+        if (current == null) {
+            setup();
+            current = jdbi;
+        }
+        return current;
+    }
+
+    // The shared connection, for direct JDBC access
+    public static Connection getConnection() {
+        getJdbi();
+        return connection;
+    }
+
+    // The store selected by agreement.store, opened on first use
+    public static AgreementStore getAgreementStore() {
+        AgreementStore current = agreementStore;
+        if (current != null) {
+            return current;
+        }
+
+        getJdbi();
+        synchronized (Database.class) {
+            if (agreementStore == null) {
+                agreementStore = createAgreementStore();
+            }
+            return agreementStore;
         }
     }
 
-    public static void closeConnection() {
+    // System properties (-Dkey=value) take precedence over application.properties
+    public static String getProperty(String key, String defaultValue) {
+        return System.getProperty(key, properties.getProperty(key, defaultValue));
+    }
+
+    // Pooled read connections, and so the most threads that can read at once
+    public static int getReadPoolSize() {
+        return Integer.parseInt(getProperty("db.pool.size", "4"));
+    }
+
+    // Runs the callback on the writer connection, after any writes queued before it
+    public static <R> R write(HandleCallback<R, RuntimeException> callback) {
+        getJdbi();
+        return writer.write(callback);
+    }
+
+    // Registers a callback to run whenever the database is closed, for caches of data read from it
+    public static void onClose(Runnable listener) {
+        closeListeners.add(listener);
+    }
+
+    // Registers a callback to run before the database is closed, while it can still be written, e.g. to finish
+    // queued writes
+    public static void onBeforeClose(Runnable listener) {
+        beforeCloseListeners.add(listener);
+    }
+
+    // Safe to call more than once, or before the database was ever opened. The next use opens it again.
+    public static synchronized void closeConnection() {
+        if (jdbi != null) {
+            beforeCloseListeners.forEach(Runnable::run);
+        }
+        if (agreementStore != null) {
+            agreementStore.close();
+            agreementStore = null;
+        }
+        jdbi = null;
+        closeListeners.forEach(Runnable::run);
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (readPool != null) {
+            readPool.close();
+            readPool = null;
+        }
         if (connection != null) {
             try {
                 connection.close();
             } catch (SQLException e) {
                 System.out.println("Error closing database connection: " + e.getMessage());
             }
+            connection = null;
         }
     }
 
-    private static void migrateDatabase() {
-        Flyway flyway = Flyway.configure()
-                .dataSource(url, "", "")
-                .locations(pathToMigrationFile)
-                .load();
+    private static AgreementStore createAgreementStore() {
+        SqliteAgreementStore table = new SqliteAgreementStore();
+        String store = getProperty("agreement.store", "sqlite");
+        return switch (store) {
+            case "sqlite" -> table;
+            case "journal" -> {
+                try {
+                    yield new JournalAgreementStore(Path.of(getProperty("agreement.journal.path", "agreements.journal")),
+                            table, Integer.parseInt(getProperty("agreement.journal.compact_records", "10000")),
+                            Long.parseLong(getProperty("agreement.journal.compact_interval_seconds", "60")),
+                            Integer.parseInt(getProperty("agreement.journal.id_block_size", "1000")),
+                            Boolean.parseBoolean(getProperty("agreement.journal.sync", "false")));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error opening agreement journal: ", e);
+                }
+            }
+            default -> throw new IllegalArgumentException(String.format("Agreement store %s is not supported.", store));
+        };
+    }
+
+    // Every connection - the shared one, Flyway's and each one JDBI opens - is configured with the same pragmas
+    private static SQLiteDataSource createDataSource(String url) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.enforceForeignKeys(true);
+        config.setJournalMode(SQLiteConfig.JournalMode.valueOf(getProperty("db.journal_mode", "WAL").toUpperCase()));
+        config.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(getProperty("db.synchronous", "NORMAL").toUpperCase()));
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, getProperty("db.mmap_size", "268435456"));
+        config.setCacheSize(Integer.parseInt(getProperty("db.cache_size", "-16000")));
+        config.setTempStore(SQLiteConfig.TempStore.valueOf(getProperty("db.temp_store", "MEMORY").toUpperCase()));
+        config.setBusyTimeout(Integer.parseInt(getProperty("db.busy_timeout", "5000")));
+        // Take the write lock when a transaction begins, so a transaction never has to upgrade from reader to writer
+        // (an upgrade that fails immediately with SQLITE_BUSY instead of waiting out the busy timeout)
+        config.setTransactionMode(SQLiteConfig.TransactionMode.valueOf(
+                getProperty("db.transaction_mode", "IMMEDIATE").toUpperCase()));
 
-        flyway.migrate();
+        SQLiteDataSource sqliteDataSource = new SQLiteDataSource(config);
+        sqliteDataSource.setUrl(url);
+        return sqliteDataSource;
+    }
+
+    private static Jdbi configureJdbi(Jdbi jdbi) {
+        jdbi.installPlugin(new SqlObjectPlugin());
+        jdbi.getConfig(HandlerDecorators.class).register(repositoryMetrics);
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(repositoryMetrics);
+        return jdbi;
+    }
+
+    private static Properties loadProperties() {
+        Properties loaded = new Properties();
+        try (InputStream inputStream = Database.class.getClassLoader().getResourceAsStream("application.properties")) {
+            if (inputStream != null) {
+                loaded.load(inputStream);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading application.properties: ", e);
+        }
+        return loaded;
     }
 }
@@ -0,0 +1,86 @@
+package com.app.database;
+
+import com.app.metrics.LatencyHistogram;
+import com.app.metrics.Metrics;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.HandleCallback;
+import org.jdbi.v3.core.Jdbi;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Owns the one connection that writes. SQLite allows a single writer at a time, so instead of having threads contend
+// for the write lock, write callbacks are queued and run in order on a dedicated thread.
+public class DatabaseWriter {
+    private static final LatencyHistogram queueLatency = Metrics.latency("app_database_write_queue_seconds",
+            "Time writes wait for the writer thread before they start");
+
+    private final Connection connection;
+    private final Handle handle;
+    private final ExecutorService executor;
+    private volatile Thread writerThread;
+
+    DatabaseWriter(Jdbi jdbi, Connection connection) {
+        this.connection = connection;
+        this.handle = jdbi.open();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-writer");
+            thread.setDaemon(true);
+            writerThread = thread;
+            return thread;
+        });
+    }
+
+    // Runs the callback on the writer thread and waits for its result. Called from the writer thread itself, e.g. by a
+    // write that saves through a store, it runs the callback straight away rather than queueing behind itself.
+    public <R> R write(HandleCallback<R, RuntimeException> callback) {
+        if (Thread.currentThread() == writerThread) {
+            return callback.withHandle(handle);
+        }
+
+        long submitted = System.nanoTime();
+        Future<R> result = executor.submit(() -> {
+            queueLatency.recordSince(submitted);
+            return callback.withHandle(handle);
+        });
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Database write failed: ", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database write.", e);
+        }
+    }
+
+    // Finishes queued writes, then closes the writer connection
+    void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.out.println("Timed out waiting for queued database writes to finish.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        handle.close();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing database connection: " + e.getMessage());
+        }
+    }
+}
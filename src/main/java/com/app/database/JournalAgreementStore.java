@@ -0,0 +1,423 @@
+package com.app.database;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.RentalPeriodDao;
+import com.app.database.dao.ToolDao;
+import com.app.database.repository.ToolRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Agreements appended to a memory-mapped file of fixed-width records, in front of the rental_agreements table. A
+// save is a 48-byte write into the mapping rather than a SQLite transaction. Records are copied into the table in one
+// transaction (compaction) on a background thread once agreement.journal.compact_records have accumulated and every
+// agreement.journal.compact_interval_seconds, and on flush and close, after which the journal starts again from the
+// top. Saves carry on while the table insert runs; the header then records where the uncopied records start, and
+// those saved meanwhile are moved to the top.
+//
+// Ids are reserved in blocks from the table's AUTOINCREMENT sequence, so they never collide with agreements inserted
+// into the table directly. Each record ends with a CRC32 of its fields; on startup the journal is read up to the
+// first record whose checksum does not match, which is where a crash interrupted a write, and everything after it is
+// cleared. Records that were copied into the table just before a crash may be read again; compaction skips ids the
+// table already has.
+//
+// Unless agreement.journal.sync is true a save survives the process crashing but not the machine, like
+// db.synchronous=NORMAL.
+final class JournalAgreementStore implements AgreementStore {
+    private static final int MAGIC = 0x41474A31;
+    private static final int HEADER_BYTES = 16;
+    // Header field holding the offset of the first record not yet copied into the table; 0 in older journals
+    private static final int START_FIELD = 8;
+    static final int RECORD_BYTES = 48;
+    private static final int CRC_OFFSET = RECORD_BYTES - Integer.BYTES;
+
+    private final FileChannel channel;
+    private final SqliteAgreementStore table;
+    private final int compactRecords;
+    private final int idBlockSize;
+    private final boolean sync;
+    private final ScheduledExecutorService compactor;
+    // One compaction at a time. Taken before the monitor, never while holding it.
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    // Journaled agreements that make a save queue a compaction; raised after a failed one so saves do not retry it
+    private int compactAt;
+    private boolean compactionQueued;
+    private final Map<Integer, ToolDao> toolsById = new ConcurrentHashMap<>();
+    // Ids of the agreements in the journal and the offsets of their records
+    private final Map<Integer, Integer> offsets = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private int start;
+    private int position;
+    private int nextId;
+    private int idBlockEnd;
+
+    JournalAgreementStore(Path path, SqliteAgreementStore table, int compactRecords, long compactIntervalSeconds,
+                          int idBlockSize, boolean sync) throws IOException {
+        this.table = table;
+        this.compactRecords = compactRecords;
+        this.compactAt = compactRecords;
+        this.idBlockSize = idBlockSize;
+        this.sync = sync;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long existing = channel.size();
+        map((int) Math.max(existing, HEADER_BYTES + (long) RECORD_BYTES * compactRecords));
+        if (existing < HEADER_BYTES) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, RECORD_BYTES);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != RECORD_BYTES) {
+            channel.close();
+            throw new IllegalStateException(String.format("%s is not an agreement journal.", path));
+        }
+        recover();
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "agreement-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (compactIntervalSeconds > 0) {
+            compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalSeconds, compactIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public int insert(RentalAgreementDao agreement) {
+        synchronized (this) {
+            int offset = append(agreement);
+            if (sync) {
+                buffer.force(offset, RECORD_BYTES);
+            }
+        }
+        compactIfFull();
+        return agreement.id;
+    }
+
+    @Override
+    public int[] insertAll(List<RentalAgreementDao> agreements) {
+        int[] ids = new int[agreements.size()];
+        synchronized (this) {
+            int first = position;
+            for (int i = 0; i < ids.length; i++) {
+                append(agreements.get(i));
+                ids[i] = agreements.get(i).id;
+            }
+            if (sync && position > first) {
+                buffer.force(first, position - first);
+            }
+        }
+        compactIfFull();
+        return ids;
+    }
+
+    @Override
+    public RentalAgreementDao findById(int id) {
+        synchronized (this) {
+            Integer offset = offsets.get(id);
+            if (offset != null) {
+                return read(offset);
+            }
+        }
+        return table.findById(id);
+    }
+
+    @Override
+    public boolean hasOverlappingAgreement(int toolId, LocalDate checkoutDate, LocalDate dueDate) {
+        int from = (int) checkoutDate.toEpochDay();
+        int to = (int) dueDate.toEpochDay();
+        synchronized (this) {
+            for (int offset = start; offset < position; offset += RECORD_BYTES) {
+                if (buffer.getInt(offset + 4) == toolId && buffer.getInt(offset + 12) < to
+                        && buffer.getInt(offset + 16) > from) {
+                    return true;
+                }
+            }
+        }
+        return table.hasOverlappingAgreement(toolId, checkoutDate, dueDate);
+    }
+
+    @Override
+    public void forEachRentalPeriod(Consumer<RentalPeriodDao> action) {
+        List<RentalAgreementDao> journaled;
+        synchronized (this) {
+            journaled = readAll();
+        }
+        table.forEachRentalPeriod(action);
+        for (RentalAgreementDao agreement : journaled) {
+            RentalPeriodDao period = new RentalPeriodDao();
+            period.toolCode = agreement.tool.code;
+            period.checkoutDate = agreement.checkoutDate;
+            period.dueDate = agreement.dueDate;
+            action.accept(period);
+        }
+    }
+
+    // Skipped if a compaction is already running; the journal is checked again after the next save
+    void compact() {
+        if (!compactionLock.tryLock()) {
+            return;
+        }
+        try {
+            copyIntoTable();
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    // Unlike compact(), waits for a running compaction, so everything saved before the call ends up in the table
+    @Override
+    public void flush() {
+        compactionLock.lock();
+        try {
+            copyIntoTable();
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    // Agreements currently in the journal rather than the table
+    synchronized int getJournaledCount() {
+        return offsets.size();
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            System.out.println("Error compacting agreement journal: " + ex.getMessage());
+        }
+        synchronized (this) {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Error closing agreement journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Copies every journaled agreement into the table, then drops them from the journal. The records are read and
+    // dropped under the monitor, but the table insert runs outside it, so saves do not wait for SQLite. Called with
+    // compactionLock held.
+    private void copyIntoTable() {
+        int copiedEnd;
+        List<RentalAgreementDao> copied;
+        synchronized (this) {
+            if (position == start) {
+                return;
+            }
+            copiedEnd = position;
+            copied = readAll();
+        }
+
+        table.insertAllIgnoringExisting(copied);
+
+        synchronized (this) {
+            for (RentalAgreementDao agreement : copied) {
+                offsets.remove(agreement.id);
+            }
+            setStart(copiedEnd);
+            // Records saved during the insert are moved once the copied ones leave room for them above
+            if (position - start <= start - HEADER_BYTES) {
+                moveToTop();
+            }
+            compactAt = compactRecords;
+        }
+    }
+
+    private void recover() {
+        start = Math.max(buffer.getInt(START_FIELD), HEADER_BYTES);
+        int offset = start;
+        while (offset + RECORD_BYTES <= buffer.capacity() && isValid(offset)) {
+            offsets.put(buffer.getInt(offset), offset);
+            offset += RECORD_BYTES;
+        }
+        position = offset;
+
+        // Anything after the first bad record was either never completed or is left over from before a compaction
+        for (; offset + RECORD_BYTES <= buffer.capacity(); offset += RECORD_BYTES) {
+            clear(offset);
+        }
+    }
+
+    private int append(RentalAgreementDao agreement) {
+        if (position + RECORD_BYTES > buffer.capacity()) {
+            // Only reached when compaction keeps failing, e.g. while the database is unavailable
+            map(buffer.capacity() * 2);
+        }
+
+        agreement.id = allocateId();
+        int offset = position;
+        buffer.putInt(offset, agreement.id);
+        buffer.putInt(offset + 4, agreement.tool.id);
+        buffer.putInt(offset + 8, agreement.rentalDays);
+        buffer.putInt(offset + 12, (int) agreement.checkoutDate.toEpochDay());
+        buffer.putInt(offset + 16, (int) agreement.dueDate.toEpochDay());
+        buffer.putInt(offset + 20, agreement.dailyRentalChargeInCents);
+        buffer.putInt(offset + 24, agreement.chargeDays);
+        buffer.putInt(offset + 28, agreement.preDiscountChargeInCents);
+        buffer.putInt(offset + 32, agreement.discountPercent);
+        buffer.putInt(offset + 36, agreement.discountAmountInCents);
+        buffer.putInt(offset + 40, agreement.finalChargeInCents);
+        buffer.putInt(offset + CRC_OFFSET, checksum(offset));
+
+        toolsById.putIfAbsent(agreement.tool.id, agreement.tool);
+        offsets.put(agreement.id, offset);
+        position += RECORD_BYTES;
+        return offset;
+    }
+
+    private RentalAgreementDao read(int offset) {
+        RentalAgreementDao agreement = new RentalAgreementDao();
+        agreement.id = buffer.getInt(offset);
+        agreement.tool = getTool(buffer.getInt(offset + 4));
+        agreement.rentalDays = buffer.getInt(offset + 8);
+        agreement.checkoutDate = LocalDate.ofEpochDay(buffer.getInt(offset + 12));
+        agreement.dueDate = LocalDate.ofEpochDay(buffer.getInt(offset + 16));
+        agreement.dailyRentalChargeInCents = buffer.getInt(offset + 20);
+        agreement.chargeDays = buffer.getInt(offset + 24);
+        agreement.preDiscountChargeInCents = buffer.getInt(offset + 28);
+        agreement.discountPercent = buffer.getInt(offset + 32);
+        agreement.discountAmountInCents = buffer.getInt(offset + 36);
+        agreement.finalChargeInCents = buffer.getInt(offset + 40);
+        return agreement;
+    }
+
+    private List<RentalAgreementDao> readAll() {
+        List<RentalAgreementDao> agreements = new ArrayList<>(offsets.size());
+        for (int offset = start; offset < position; offset += RECORD_BYTES) {
+            agreements.add(read(offset));
+        }
+        return agreements;
+    }
+
+    private ToolDao getTool(int toolId) {
+        return toolsById.computeIfAbsent(toolId,
+                id -> Database.getJdbi().onDemand(ToolRepository.class).findToolById(id));
+    }
+
+    private boolean isValid(int offset) {
+        return buffer.getInt(offset) != 0 && buffer.getInt(offset + CRC_OFFSET) == checksum(offset);
+    }
+
+    private int checksum(int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private void clear(int offset) {
+        for (int i = 0; i < RECORD_BYTES; i += Integer.BYTES) {
+            buffer.putInt(offset + i, 0);
+        }
+    }
+
+    private int allocateId() {
+        if (nextId == idBlockEnd) {
+            nextId = table.reserveIds(idBlockSize);
+            idBlockEnd = nextId + idBlockSize;
+        }
+        return nextId++;
+    }
+
+    // Moves the records from start to the top, over records already copied into the table, and only then points the
+    // header at them, so a crash part way still reads them where they were. The rest is cleared from the end, so a
+    // crash part way leaves only records that are also elsewhere, which are safe to read again.
+    private void moveToTop() {
+        int destination = HEADER_BYTES;
+        for (int offset = start; offset < position; offset += RECORD_BYTES) {
+            buffer.put(destination, buffer, offset, RECORD_BYTES);
+            offsets.put(buffer.getInt(destination), destination);
+            destination += RECORD_BYTES;
+        }
+        if (sync) {
+            buffer.force();
+        }
+        setStart(HEADER_BYTES);
+
+        for (int offset = position - RECORD_BYTES; offset >= destination; offset -= RECORD_BYTES) {
+            clear(offset);
+        }
+        position = destination;
+    }
+
+    private void setStart(int offset) {
+        start = offset;
+        buffer.putInt(START_FIELD, offset);
+        if (sync) {
+            buffer.force(START_FIELD, Integer.BYTES);
+        }
+    }
+
+    // Queues a compaction on the compactor thread, so the save that fills the journal does not wait for the table.
+    // No more are queued until it has run.
+    private void compactIfFull() {
+        synchronized (this) {
+            if (offsets.size() < compactAt || compactionQueued) {
+                return;
+            }
+            compactionQueued = true;
+        }
+        try {
+            compactor.execute(() -> {
+                try {
+                    compactQuietly();
+                } finally {
+                    synchronized (this) {
+                        compactionQueued = false;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closing, and close() copies whatever is left
+        }
+    }
+
+    // A failed compaction leaves the journal as it is, to be copied at the next interval, on close, or once another
+    // compact_records have been saved
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException ex) {
+            System.out.println("Error compacting agreement journal: " + ex.getMessage());
+            synchronized (this) {
+                compactAt = offsets.size() + compactRecords;
+            }
+        }
+    }
+
+    private void map(int capacity) {
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error mapping agreement journal: ", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.app.database;
+
+import com.app.metrics.LatencyHistogram;
+import com.app.metrics.Metrics;
+import org.jdbi.v3.core.extension.ExtensionMethod;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.sqlobject.Handler;
+import org.jdbi.v3.sqlobject.HandlerDecorator;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Times every repository method twice: the whole call, which includes binding arguments and mapping rows, and just the
+// SQL statements it runs, as measured by JDBI from execution until the statement completes. The difference between the
+// two is time spent in JDBI rather than SQLite. Methods returning a Stream are only timed until the stream is
+// returned.
+class RepositoryMetrics implements HandlerDecorator, SqlLogger {
+    private static final String CALL_METRIC = "app_repository_call_seconds";
+    private static final String CALL_HELP = "Time spent in repository methods, including argument binding and row mapping";
+    private static final String STATEMENT_METRIC = "app_sql_statement_seconds";
+    private static final String STATEMENT_HELP = "Time SQLite spent executing the statements of repository methods";
+
+    private static final LatencyHistogram unattributedStatements =
+            Metrics.latency(STATEMENT_METRIC, STATEMENT_HELP, "repository", "none", "method", "none");
+    private static final Map<Method, LatencyHistogram> statementLatencies = new ConcurrentHashMap<>();
+
+    // Called once per repository method, when JDBI first builds its handler
+    @Override
+    public Handler decorateHandler(Handler base, Class<?> sqlObjectType, Method method) {
+        LatencyHistogram latency = Metrics.latency(CALL_METRIC, CALL_HELP,
+                "repository", sqlObjectType.getSimpleName(), "method", method.getName());
+        return (target, args, handle) -> {
+            long started = System.nanoTime();
+            try {
+                return base.invoke(target, args, handle);
+            } finally {
+                latency.recordSince(started);
+            }
+        };
+    }
+
+    @Override
+    public void logAfterExecution(StatementContext context) {
+        record(context, context.getCompletionMoment());
+    }
+
+    @Override
+    public void logException(StatementContext context, SQLException ex) {
+        record(context, context.getExceptionMoment());
+    }
+
+    private static void record(StatementContext context, Instant finished) {
+        if (context.getExecutionMoment() == null || finished == null) {
+            return;
+        }
+        getStatementLatency(context.getExtensionMethod())
+                .record(Duration.between(context.getExecutionMoment(), finished).toNanos());
+    }
+
+    // Statements run directly on a handle rather than through a repository are counted together
+    private static LatencyHistogram getStatementLatency(ExtensionMethod method) {
+        if (method == null) {
+            return unattributedStatements;
+        }
+        return statementLatencies.computeIfAbsent(method.getMethod(), key -> Metrics.latency(STATEMENT_METRIC,
+                STATEMENT_HELP, "repository", method.getType().getSimpleName(), "method", key.getName()));
+    }
+}
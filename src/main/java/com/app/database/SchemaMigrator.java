@@ -0,0 +1,109 @@
+package com.app.database;
+
+import org.flywaydb.core.Flyway;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Brings the schema up to date with the migrations bundled on the classpath. A checksum of those migrations is kept in
+// SQLite's user_version header field once they have been applied, so a database that is already current is detected
+// with one pragma read and Flyway is never loaded.
+class SchemaMigrator {
+    private static final String MIGRATION_PATH = "db/migration";
+
+    static void migrate(DataSource dataSource, Connection connection) throws SQLException {
+        int checksum = getMigrationChecksum();
+        if (checksum != 0 && checksum == getUserVersion(connection)) {
+            return;
+        }
+
+        // The loader the checksum was read with, not the calling thread's, which may not see the migrations
+        Flyway.configure(SchemaMigrator.class.getClassLoader())
+                .dataSource(dataSource)
+                .locations("classpath:" + MIGRATION_PATH)
+                .load()
+                .migrate();
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("PRAGMA user_version = " + checksum);
+        }
+    }
+
+    // CRC32 over the name and contents of every bundled migration, in name order
+    static int getMigrationChecksum() {
+        CRC32 crc = new CRC32();
+        ClassLoader classLoader = SchemaMigrator.class.getClassLoader();
+        for (String name : listMigrations(classLoader)) {
+            crc.update(name.getBytes(StandardCharsets.UTF_8));
+            try (InputStream inputStream = classLoader.getResourceAsStream(MIGRATION_PATH + "/" + name)) {
+                crc.update(inputStream.readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int getUserVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Migrations are either a directory on disk (running from target/classes) or entries in the application jar
+    private static List<String> listMigrations(ClassLoader classLoader) {
+        URL location = classLoader.getResource(MIGRATION_PATH);
+        if (location == null) {
+            throw new IllegalStateException(String.format("Migrations could not be found on the classpath at %s.", MIGRATION_PATH));
+        }
+
+        List<String> names = new ArrayList<>();
+        try {
+            if (location.getProtocol().equals("jar")) {
+                JarFile jar = ((JarURLConnection) location.openConnection()).getJarFile();
+                String prefix = MIGRATION_PATH + "/";
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement().getName();
+                    if (entryName.startsWith(prefix) && entryName.endsWith(".sql") && entryName.indexOf('/', prefix.length()) < 0) {
+                        names.add(entryName.substring(prefix.length()));
+                    }
+                }
+            } else {
+                try (Stream<Path> files = Files.list(Path.of(location.toURI()))) {
+                    files.map(file -> file.getFileName().toString())
+                            .filter(name -> name.endsWith(".sql"))
+                            .forEach(names::add);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,85 @@
+package com.app.database;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.RentalPeriodDao;
+import com.app.database.repository.RentalAgreementRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Agreements in the rental_agreements table. Inserts go through the database writer, reads through the pool.
+final class SqliteAgreementStore implements AgreementStore {
+    @Override
+    public int insert(RentalAgreementDao agreement) {
+        agreement.id = Database.write(handle -> {
+            int id = handle.attach(RentalAgreementRepository.class).insert(agreement);
+            AgreementAggregates.recordInserted(List.of(agreement));
+            return id;
+        });
+        return agreement.id;
+    }
+
+    @Override
+    public int[] insertAll(List<RentalAgreementDao> agreements) {
+        int[] ids = Database.write(handle -> {
+            int[] inserted = handle.attach(RentalAgreementRepository.class).insertBatch(agreements);
+            AgreementAggregates.recordInserted(agreements);
+            return inserted;
+        });
+        for (int i = 0; i < ids.length; i++) {
+            agreements.get(i).id = ids[i];
+        }
+        return ids;
+    }
+
+    @Override
+    public RentalAgreementDao findById(int id) {
+        return Database.getJdbi().onDemand(RentalAgreementRepository.class).findAgreementById(id);
+    }
+
+    @Override
+    public boolean hasOverlappingAgreement(int toolId, LocalDate checkoutDate, LocalDate dueDate) {
+        return Database.getJdbi().onDemand(RentalAgreementRepository.class)
+                .hasOverlappingAgreement(toolId, checkoutDate, dueDate);
+    }
+
+    @Override
+    public void forEachRentalPeriod(Consumer<RentalPeriodDao> action) {
+        Database.getJdbi().useExtension(RentalAgreementRepository.class, repository -> {
+            try (Stream<RentalPeriodDao> periods = repository.streamRentalPeriods()) {
+                periods.forEach(action);
+            }
+        });
+    }
+
+    // Agreements in the given list that already exist are left as they are
+    void insertAllIgnoringExisting(List<RentalAgreementDao> agreements) {
+        Database.write(handle -> {
+            int[] counts = handle.attach(RentalAgreementRepository.class).insertAllIgnoringExisting(agreements);
+            List<RentalAgreementDao> inserted = new ArrayList<>(agreements.size());
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    inserted.add(agreements.get(i));
+                }
+            }
+            AgreementAggregates.recordInserted(inserted);
+            return null;
+        });
+    }
+
+    // Reserves count ids in the table's AUTOINCREMENT sequence and returns the first
+    int reserveIds(int count) {
+        return Database.write(handle -> handle.attach(RentalAgreementRepository.class).reserveIds(count));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,20 @@
+package com.app.database.dao;
+
+import org.jdbi.v3.core.mapper.reflect.ColumnName;
+
+import java.time.LocalDate;
+
+public class DailyRevenueDao {
+    @ColumnName("checkout_date")
+    public LocalDate checkoutDate;
+    @ColumnName("tool_type")
+    public String toolType;
+    @ColumnName("agreements")
+    public long agreements;
+    @ColumnName("rental_days")
+    public long rentalDays;
+    @ColumnName("charge_days")
+    public long chargeDays;
+    @ColumnName("final_charge_in_cents")
+    public long finalChargeInCents;
+}
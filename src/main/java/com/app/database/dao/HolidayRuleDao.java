@@ -0,0 +1,20 @@
+package com.app.database.dao;
+
+import org.jdbi.v3.core.mapper.reflect.ColumnName;
+
+public class HolidayRuleDao {
+    @ColumnName("name")
+    public String name;
+    @ColumnName("rule_type")
+    public String ruleType;
+    @ColumnName("month")
+    public int month;
+    @ColumnName("day_of_month")
+    public Integer dayOfMonth;
+    @ColumnName("day_of_week")
+    public Integer dayOfWeek;
+    @ColumnName("week_of_month")
+    public Integer weekOfMonth;
+    @ColumnName("observe_nearest_weekday")
+    public boolean observeNearestWeekday;
+}
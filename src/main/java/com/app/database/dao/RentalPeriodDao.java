@@ -0,0 +1,9 @@
+package com.app.database.dao;
+
+import java.time.LocalDate;
+
+public class RentalPeriodDao {
+    public String toolCode;
+    public LocalDate checkoutDate;
+    public LocalDate dueDate;
+}
@@ -0,0 +1,18 @@
+package com.app.database.dao;
+
+import org.jdbi.v3.core.mapper.reflect.ColumnName;
+
+public class ToolUtilizationDao {
+    @ColumnName("tool_id")
+    public int toolId;
+    @ColumnName("tool_code")
+    public String toolCode;
+    @ColumnName("agreements")
+    public long agreements;
+    @ColumnName("rental_days")
+    public long rentalDays;
+    @ColumnName("charge_days")
+    public long chargeDays;
+    @ColumnName("final_charge_in_cents")
+    public long finalChargeInCents;
+}
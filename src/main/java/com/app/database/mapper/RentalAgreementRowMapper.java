@@ -0,0 +1,41 @@
+package com.app.database.mapper;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolDao;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Maps agreement rows by column position rather than by name, so reading a row is a fixed sequence of getters with no
+// reflection or column-name lookups. Queries must select COLUMNS, in that order.
+public class RentalAgreementRowMapper implements RowMapper<RentalAgreementDao> {
+    public static final String COLUMNS = "r.id, r.tool_id, t.code AS tool_code, t.type AS tool_type, " +
+            "t.brand AS tool_brand, r.rental_days, r.checkout_date, r.due_date, r.daily_rental_charge_in_cents, " +
+            "r.charge_days, r.prediscount_charge_in_cents, r.discount_percent, r.discount_amount_in_cents, " +
+            "r.final_charge_in_cents";
+
+    @Override
+    public RentalAgreementDao map(ResultSet rs, StatementContext ctx) throws SQLException {
+        ToolDao tool = new ToolDao();
+        tool.id = rs.getInt(2);
+        tool.code = rs.getString(3);
+        tool.type = rs.getString(4);
+        tool.brand = rs.getString(5);
+
+        RentalAgreementDao agreement = new RentalAgreementDao();
+        agreement.id = rs.getInt(1);
+        agreement.tool = tool;
+        agreement.rentalDays = rs.getInt(6);
+        agreement.checkoutDate = rs.getDate(7).toLocalDate();
+        agreement.dueDate = rs.getDate(8).toLocalDate();
+        agreement.dailyRentalChargeInCents = rs.getInt(9);
+        agreement.chargeDays = rs.getInt(10);
+        agreement.preDiscountChargeInCents = rs.getInt(11);
+        agreement.discountPercent = rs.getInt(12);
+        agreement.discountAmountInCents = rs.getInt(13);
+        agreement.finalChargeInCents = rs.getInt(14);
+        return agreement;
+    }
+}
@@ -0,0 +1,20 @@
+package com.app.database.mapper;
+
+import com.app.database.dao.RentalPeriodDao;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Maps rows of (tool code, checkout date, due date) by column position
+public class RentalPeriodRowMapper implements RowMapper<RentalPeriodDao> {
+    @Override
+    public RentalPeriodDao map(ResultSet rs, StatementContext ctx) throws SQLException {
+        RentalPeriodDao period = new RentalPeriodDao();
+        period.toolCode = rs.getString(1);
+        period.checkoutDate = rs.getDate(2).toLocalDate();
+        period.dueDate = rs.getDate(3).toLocalDate();
+        return period;
+    }
+}
@@ -0,0 +1,60 @@
+package com.app.database.repository;
+
+import com.app.database.dao.DailyRevenueDao;
+import com.app.database.dao.ToolUtilizationDao;
+import org.jdbi.v3.sqlobject.config.RegisterFieldMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindFields;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.List;
+
+// The daily_revenue_by_tool_type and tool_utilization tables, which triggers on rental_agreements keep current, and
+// the queries that recompute them from rental_agreements
+@RegisterFieldMapper(DailyRevenueDao.class)
+@RegisterFieldMapper(ToolUtilizationDao.class)
+public interface AggregateRepository {
+    @SqlQuery("SELECT * FROM daily_revenue_by_tool_type")
+    List<DailyRevenueDao> findAllDailyRevenue();
+
+    @SqlQuery("SELECT u.*, t.code AS tool_code FROM tool_utilization u JOIN tools t ON u.tool_id = t.id")
+    List<ToolUtilizationDao> findAllToolUtilization();
+
+    @SqlQuery("SELECT IFNULL(MIN(id), 0) FROM rental_agreements")
+    int getFirstAgreementId();
+
+    @SqlQuery("SELECT IFNULL(MAX(id), 0) FROM rental_agreements")
+    int getLastAgreementId();
+
+    // Totals of the agreements with ids from firstId through lastId, for rebuilding the tables a range at a time
+    @SqlQuery("SELECT r.checkout_date, t.type AS tool_type, COUNT(*) AS agreements, SUM(r.rental_days) AS rental_days, " +
+            "SUM(r.charge_days) AS charge_days, SUM(r.final_charge_in_cents) AS final_charge_in_cents " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
+            "WHERE r.id BETWEEN :firstId AND :lastId " +
+            "GROUP BY r.checkout_date, t.type")
+    List<DailyRevenueDao> sumDailyRevenue(@Bind("firstId") int firstId, @Bind("lastId") int lastId);
+
+    @SqlQuery("SELECT r.tool_id, t.code AS tool_code, COUNT(*) AS agreements, SUM(r.rental_days) AS rental_days, " +
+            "SUM(r.charge_days) AS charge_days, SUM(r.final_charge_in_cents) AS final_charge_in_cents " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
+            "WHERE r.id BETWEEN :firstId AND :lastId " +
+            "GROUP BY r.tool_id")
+    List<ToolUtilizationDao> sumToolUtilization(@Bind("firstId") int firstId, @Bind("lastId") int lastId);
+
+    @SqlUpdate("DELETE FROM daily_revenue_by_tool_type")
+    void deleteAllDailyRevenue();
+
+    @SqlUpdate("DELETE FROM tool_utilization")
+    void deleteAllToolUtilization();
+
+    @SqlBatch("INSERT INTO daily_revenue_by_tool_type (checkout_date, tool_type, agreements, rental_days, charge_days, " +
+            "final_charge_in_cents) VALUES (:checkoutDate, :toolType, :agreements, :rentalDays, :chargeDays, " +
+            ":finalChargeInCents)")
+    void insertAllDailyRevenue(@BindFields List<DailyRevenueDao> dailyRevenue);
+
+    @SqlBatch("INSERT INTO tool_utilization (tool_id, agreements, rental_days, charge_days, final_charge_in_cents) " +
+            "VALUES (:toolId, :agreements, :rentalDays, :chargeDays, :finalChargeInCents)")
+    void insertAllToolUtilization(@BindFields List<ToolUtilizationDao> toolUtilization);
+}
@@ -0,0 +1,17 @@
+package com.app.database.repository;
+
+import com.app.database.dao.HolidayRuleDao;
+import org.jdbi.v3.sqlobject.config.RegisterFieldMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+
+import java.util.List;
+
+public interface HolidayCalendarRepository {
+    @SqlQuery("SELECT id FROM holiday_calendars WHERE name = :name")
+    Integer findCalendarIdByName(@Bind("name") String name);
+
+    @RegisterFieldMapper(HolidayRuleDao.class)
+    @SqlQuery("SELECT * FROM holiday_rules WHERE calendar_id = :calendarId ORDER BY id")
+    List<HolidayRuleDao> getRulesByCalendarId(@Bind("calendarId") int calendarId);
+}
@@ -1,27 +1,155 @@
 package com.app.database.repository;
 
 import com.app.database.dao.RentalAgreementDao;
-import com.app.database.dao.ToolDao;
-import org.jdbi.v3.sqlobject.config.RegisterFieldMapper;
+import com.app.database.dao.RentalPeriodDao;
+import com.app.database.mapper.RentalAgreementRowMapper;
+import com.app.database.mapper.RentalPeriodRowMapper;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindFields;
+import org.jdbi.v3.sqlobject.customizer.FetchSize;
 import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
 
-@RegisterFieldMapper(value = RentalAgreementDao.class)
-@RegisterFieldMapper(value = ToolDao.class)
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+@RegisterRowMapper(RentalAgreementRowMapper.class)
 public interface RentalAgreementRepository {
-    @SqlUpdate("INSERT INTO rental_agreements (tool_id, rental_days, " +
+    String INSERT_SQL = "INSERT INTO rental_agreements (tool_id, rental_days, " +
             "checkout_date, due_date, daily_rental_charge_in_cents, charge_days, prediscount_charge_in_cents, " +
             "discount_percent, discount_amount_in_cents, final_charge_in_cents) VALUES (:tool.id, :rentalDays, " +
             ":checkoutDate, :dueDate, :dailyRentalChargeInCents, :chargeDays, :preDiscountChargeInCents, " +
-            ":discountPercent, :discountAmountInCents, :finalChargeInCents)")
+            ":discountPercent, :discountAmountInCents, :finalChargeInCents)";
+
+    // For agreements whose ids were reserved with reserveIds
+    String INSERT_WITH_ID_SQL = "INSERT INTO rental_agreements (id, tool_id, rental_days, " +
+            "checkout_date, due_date, daily_rental_charge_in_cents, charge_days, prediscount_charge_in_cents, " +
+            "discount_percent, discount_amount_in_cents, final_charge_in_cents) VALUES (:id, :tool.id, :rentalDays, " +
+            ":checkoutDate, :dueDate, :dailyRentalChargeInCents, :chargeDays, :preDiscountChargeInCents, " +
+            ":discountPercent, :discountAmountInCents, :finalChargeInCents)";
+
+    @SqlUpdate(INSERT_SQL)
     @GetGeneratedKeys
     int insert(@BindFields RentalAgreementDao rentalAgreement);
 
-    @SqlQuery("SELECT r.*, t.code AS tool_code, t.type AS tool_type, t.brand AS tool_brand " +
+    @SqlBatch(INSERT_SQL)
+    void insertAll(@BindFields List<RentalAgreementDao> rentalAgreements);
+
+    @SqlUpdate(INSERT_WITH_ID_SQL)
+    void insertWithId(@BindFields RentalAgreementDao rentalAgreement);
+
+    // One JDBC batch in a single transaction
+    @SqlBatch(INSERT_WITH_ID_SQL)
+    void insertAllWithIds(@BindFields List<RentalAgreementDao> rentalAgreements);
+
+    // Copying the agreement journal into the table may repeat agreements copied just before a crash. Returns 0 for
+    // each agreement that already existed and 1 for each inserted.
+    @SqlBatch("INSERT OR IGNORE INTO rental_agreements (id, tool_id, rental_days, " +
+            "checkout_date, due_date, daily_rental_charge_in_cents, charge_days, prediscount_charge_in_cents, " +
+            "discount_percent, discount_amount_in_cents, final_charge_in_cents) VALUES (:id, :tool.id, :rentalDays, " +
+            ":checkoutDate, :dueDate, :dailyRentalChargeInCents, :chargeDays, :preDiscountChargeInCents, " +
+            ":discountPercent, :discountAmountInCents, :finalChargeInCents)")
+    int[] insertAllIgnoringExisting(@BindFields List<RentalAgreementDao> rentalAgreements);
+
+    @SqlQuery("SELECT last_insert_rowid()")
+    int getLastInsertId();
+
+    // Inserts all agreements as one JDBC batch in a single transaction and returns their ids in order. SQLite only
+    // reports the key of the last row, but writers are serialized and AUTOINCREMENT assigns ascending ids, so the
+    // batch received the consecutive ids ending at that key.
+    @Transaction
+    default int[] insertBatch(List<RentalAgreementDao> rentalAgreements) {
+        if (rentalAgreements.isEmpty()) {
+            return new int[0];
+        }
+
+        insertAll(rentalAgreements);
+        int firstId = getLastInsertId() - rentalAgreements.size() + 1;
+
+        int[] ids = new int[rentalAgreements.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = firstId + i;
+        }
+        return ids;
+    }
+
+    // sqlite_sequence only has a row for the table once something has been inserted into it
+    @SqlUpdate("INSERT INTO sqlite_sequence (name, seq) SELECT 'rental_agreements', 0 " +
+            "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = 'rental_agreements')")
+    void ensureIdSequence();
+
+    @SqlUpdate("UPDATE sqlite_sequence SET seq = MAX(seq, (SELECT IFNULL(MAX(id), 0) FROM rental_agreements)) + :count " +
+            "WHERE name = 'rental_agreements'")
+    void advanceIdSequence(@Bind("count") int count);
+
+    @SqlQuery("SELECT seq FROM sqlite_sequence WHERE name = 'rental_agreements'")
+    int getIdSequence();
+
+    // Reserves the next count ids and returns the first. AUTOINCREMENT never hands out an id at or below the
+    // sequence, so later inserts without an id skip the reserved block.
+    @Transaction
+    default int reserveIds(int count) {
+        ensureIdSequence();
+        advanceIdSequence(count);
+        return getIdSequence() - count + 1;
+    }
+
+    // Rentals run from the checkout date to the due date, so one may start on the day another is due back
+    @SqlQuery("SELECT EXISTS (SELECT 1 FROM rental_agreements " +
+            "WHERE tool_id = :toolId AND checkout_date < :dueDate AND due_date > :checkoutDate)")
+    boolean hasOverlappingAgreement(@Bind("toolId") int toolId, @Bind("checkoutDate") LocalDate checkoutDate,
+                                    @Bind("dueDate") LocalDate dueDate);
+
+    // Streamed, since it reads every agreement; the stream must be closed
+    @RegisterRowMapper(RentalPeriodRowMapper.class)
+    @SqlQuery("SELECT t.code AS tool_code, r.checkout_date, r.due_date " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id")
+    Stream<RentalPeriodDao> streamRentalPeriods();
+
+    @SqlQuery("SELECT " + RentalAgreementRowMapper.COLUMNS + " " +
             "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
             "WHERE r.id = :id")
-    RentalAgreementDao findAgreementById(@Bind("id") String id);
+    RentalAgreementDao findAgreementById(@Bind("id") int id);
+
+    // Agreements checked out between two dates inclusive, in checkout date order, read from a forward-only cursor
+    // fetchSize rows at a time. Both queries walk an index in that order, so SQLite never sorts or buffers the result.
+    // The iterator must be closed.
+    @SqlQuery("SELECT " + RentalAgreementRowMapper.COLUMNS + " " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
+            "WHERE r.checkout_date >= :from AND r.checkout_date <= :to " +
+            "ORDER BY r.checkout_date, r.id")
+    ResultIterable<RentalAgreementDao> iterateAgreements(@Bind("from") LocalDate from, @Bind("to") LocalDate to,
+                                                         @FetchSize int fetchSize);
+
+    @SqlQuery("SELECT " + RentalAgreementRowMapper.COLUMNS + " " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
+            "WHERE t.code = :toolCode AND r.checkout_date >= :from AND r.checkout_date <= :to " +
+            "ORDER BY r.checkout_date, r.id")
+    ResultIterable<RentalAgreementDao> iterateAgreementsForTool(@Bind("toolCode") String toolCode,
+                                                                @Bind("from") LocalDate from,
+                                                                @Bind("to") LocalDate to, @FetchSize int fetchSize);
+
+    // First and last ids of the agreements checked out between two dates inclusive, or 0 if there are none. Read from
+    // the checkout date index alone, which holds the ids.
+    @SqlQuery("SELECT IFNULL(MIN(id), 0) FROM rental_agreements WHERE checkout_date >= :from AND checkout_date <= :to")
+    int getFirstAgreementId(@Bind("from") LocalDate from, @Bind("to") LocalDate to);
+
+    @SqlQuery("SELECT IFNULL(MAX(id), 0) FROM rental_agreements WHERE checkout_date >= :from AND checkout_date <= :to")
+    int getLastAgreementId(@Bind("from") LocalDate from, @Bind("to") LocalDate to);
+
+    // Agreements with ids from firstId through lastId that were checked out between two dates inclusive, in id order,
+    // read from a forward-only cursor fetchSize rows at a time. The iterator must be closed.
+    @SqlQuery("SELECT " + RentalAgreementRowMapper.COLUMNS + " " +
+            "FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
+            "WHERE r.id >= :firstId AND r.id <= :lastId AND r.checkout_date >= :from AND r.checkout_date <= :to " +
+            "ORDER BY r.id")
+    ResultIterable<RentalAgreementDao> iterateAgreementsByIds(@Bind("firstId") int firstId, @Bind("lastId") int lastId,
+                                                              @Bind("from") LocalDate from, @Bind("to") LocalDate to,
+                                                              @FetchSize int fetchSize);
 }
@@ -6,12 +6,26 @@ import org.jdbi.v3.sqlobject.config.RegisterFieldMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 
+import java.util.List;
+
 public interface ToolRepository {
     @RegisterFieldMapper(ToolDao.class)
     @SqlQuery("SELECT * FROM tools WHERE code = :code")
     ToolDao findToolByCode(@Bind("code") String code);
 
+    @RegisterFieldMapper(ToolDao.class)
+    @SqlQuery("SELECT * FROM tools WHERE id = :id")
+    ToolDao findToolById(@Bind("id") int id);
+
     @RegisterFieldMapper(ToolTypeChargesDao.class)
     @SqlQuery("SELECT * FROM tool_type_charges WHERE tool_type = :type")
     ToolTypeChargesDao getChargeDetailsByType(@Bind("type") String type);
+
+    @RegisterFieldMapper(ToolDao.class)
+    @SqlQuery("SELECT * FROM tools")
+    List<ToolDao> findAllTools();
+
+    @RegisterFieldMapper(ToolTypeChargesDao.class)
+    @SqlQuery("SELECT * FROM tool_type_charges")
+    List<ToolTypeChargesDao> getAllChargeDetails();
 }
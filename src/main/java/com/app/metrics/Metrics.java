@@ -0,0 +1,146 @@
+package com.app.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide registry of counters and latency histograms. Callers look a metric up once, usually into a static
+// field, and then update it without locking. Everything registered can be written in the Prometheus text format, and
+// read through JMX once registerMBean has been called.
+//
+// Latencies are exported as Prometheus summaries in seconds. Labels are given as name, value pairs.
+public class Metrics {
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, String> help = new ConcurrentHashMap<>();
+    private static final Map<Series, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private static final Map<Series, LongAdder> counters = new ConcurrentHashMap<>();
+    private static boolean mbeanRegistered;
+
+    // One metric: its name and its rendered labels, e.g. method="insert"
+    record Series(String name, String labels) implements Comparable<Series> {
+        @Override
+        public int compareTo(Series other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : labels.compareTo(other.labels);
+        }
+
+        @Override
+        public String toString() {
+            return labels.isEmpty() ? name : name + "{" + labels + "}";
+        }
+    }
+
+    public static LatencyHistogram latency(String name, String description, String... labels) {
+        help.putIfAbsent(name, description);
+        return latencies.computeIfAbsent(new Series(name, formatLabels(labels)), series -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name, String description, String... labels) {
+        help.putIfAbsent(name, description);
+        return counters.computeIfAbsent(new Series(name, formatLabels(labels)), series -> new LongAdder());
+    }
+
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        try {
+            writePrometheus(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    public static void writePrometheus(Appendable out) throws IOException {
+        String family = null;
+        for (Map.Entry<Series, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            Series series = entry.getKey();
+            if (!series.name().equals(family)) {
+                family = series.name();
+                writeHeader(out, family, "counter");
+            }
+            out.append(series.toString()).append(' ').append(Long.toString(entry.getValue().sum())).append('\n');
+        }
+
+        for (Map.Entry<Series, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            Series series = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            if (!series.name().equals(family)) {
+                family = series.name();
+                writeHeader(out, family, "summary");
+            }
+
+            String labelPrefix = series.labels().isEmpty() ? "" : series.labels() + ",";
+            for (double quantile : QUANTILES) {
+                out.append(series.name()).append('{').append(labelPrefix).append("quantile=\"")
+                        .append(Double.toString(quantile)).append("\"} ")
+                        .append(formatSeconds(histogram.getValueAtQuantile(quantile))).append('\n');
+            }
+            String labels = series.labels().isEmpty() ? "" : "{" + series.labels() + "}";
+            out.append(series.name()).append("_sum").append(labels).append(' ')
+                    .append(formatSeconds(histogram.getTotalNanos())).append('\n');
+            out.append(series.name()).append("_count").append(labels).append(' ')
+                    .append(Long.toString(histogram.getCount())).append('\n');
+        }
+    }
+
+    // Publishes the metrics as com.app:type=Metrics on the platform MBean server. Only long-running modes call this,
+    // since starting JMX adds to startup time.
+    public static synchronized void registerMBean() {
+        if (mbeanRegistered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBeanImpl(),
+                    new ObjectName("com.app:type=Metrics"));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by an earlier class loader in the same JVM, e.g. in tests
+        } catch (JMException e) {
+            throw new IllegalStateException("Error registering metrics MBean: ", e);
+        }
+        mbeanRegistered = true;
+    }
+
+    static Map<Series, LatencyHistogram> getLatencies() {
+        return latencies;
+    }
+
+    static Map<Series, LongAdder> getCounters() {
+        return counters;
+    }
+
+    static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static void writeHeader(Appendable out, String name, String type) throws IOException {
+        out.append("# HELP ").append(name).append(' ')
+                .append(help.getOrDefault(name, "").replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Metric labels must be given as name, value pairs.");
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                formatted.append(',');
+            }
+            formatted.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\")
+                    .replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return formatted.toString();
+    }
+}
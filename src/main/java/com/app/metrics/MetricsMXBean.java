@@ -0,0 +1,21 @@
+package com.app.metrics;
+
+import java.util.Map;
+
+// JMX view of the metrics registry. Maps are keyed by metric name and labels, e.g.
+// app_repository_call_seconds{repository="ToolRepository",method="findToolByCode"}; latencies are in milliseconds.
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getLatencyCounts();
+
+    Map<String, Double> getLatencyMeanMillis();
+
+    Map<String, Double> getLatencyP50Millis();
+
+    Map<String, Double> getLatencyP99Millis();
+
+    Map<String, Double> getLatencyMaxMillis();
+
+    String getPrometheusText();
+}
@@ -0,0 +1,56 @@
+package com.app.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+
+class MetricsMXBeanImpl implements MetricsMXBean {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        Metrics.getCounters().forEach((series, counter) -> values.put(series.toString(), counter.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyCounts() {
+        Map<String, Long> values = new TreeMap<>();
+        Metrics.getLatencies().forEach((series, histogram) -> values.put(series.toString(), histogram.getCount()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMeanMillis() {
+        return getLatencies(histogram -> histogram.getCount() == 0 ? 0
+                : histogram.getTotalNanos() / (double) histogram.getCount());
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return getLatencies(histogram -> histogram.getValueAtQuantile(0.5));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return getLatencies(histogram -> histogram.getValueAtQuantile(0.99));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMaxMillis() {
+        return getLatencies(LatencyHistogram::getMaxNanos);
+    }
+
+    @Override
+    public String getPrometheusText() {
+        return Metrics.toPrometheus();
+    }
+
+    private static Map<String, Double> getLatencies(ToDoubleFunction<LatencyHistogram> nanos) {
+        Map<String, Double> values = new TreeMap<>();
+        Metrics.getLatencies().forEach((series, histogram) ->
+                values.put(series.toString(), nanos.applyAsDouble(histogram) / NANOS_PER_MILLI));
+        return values;
+    }
+}
@@ -0,0 +1,339 @@
+package com.app.server;
+
+import com.app.FlatJson;
+import com.app.database.AgreementAggregates;
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.services.AvailabilityIndex;
+import com.app.services.CheckoutRequest;
+import com.app.services.HolidayCalendar;
+import com.app.services.Quote;
+import com.app.services.ToolRentalService;
+import com.app.services.ToolUnavailableException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Long-running HTTP front end for ToolRentalService. Each request runs on its own virtual thread; requests beyond
+// server.max_concurrent_requests are turned away with 503 rather than queued.
+//
+//   POST /checkout          JSON body with toolCode, rentalDays, discountPercent, checkoutDate (and optionally
+//                           holidayCalendar); responds 201 with the agreement and a Location header
+//   GET  /agreements/{id}   responds 200 with the agreement, or 404
+//   GET  /quote?toolCode=&checkoutDate=&discountPercent=&maxRentalDays=[&holidayCalendar=]
+//                           responds 200 with a JSON price for every rental length up to maxRentalDays; nothing is saved
+//   GET  /revenue?from=&to= responds 200 with JSON totals by tool type for agreements checked out in the period
+//   GET  /utilization       responds 200 with JSON totals of every agreement by tool
+//   GET  /availability?from=&to=[&toolCode=]
+//                           responds 200 with whether the tool is free from `from` up to, but not including, `to`, or
+//                           without toolCode with every tool that is
+//   GET  /next-available?toolCode=&from=&rentalDays=
+//                           responds 200 with the earliest checkout date on or after `from` the tool is free for
+public class RentalHttpServer {
+    private static final String TEXT = "text/plain; charset=utf-8";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int shutdownGraceSeconds;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public RentalHttpServer(int port) throws IOException {
+        int maxConcurrentRequests = Integer.parseInt(Database.getProperty("server.max_concurrent_requests", "256"));
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.shutdownGraceSeconds = Integer.parseInt(Database.getProperty("server.shutdown_grace_seconds", "10"));
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.parseInt(Database.getProperty("server.backlog", "0")));
+        this.server.setExecutor(executor);
+        this.server.createContext("/checkout", exchange -> handle(exchange, this::checkout));
+        this.server.createContext("/agreements/", exchange -> handle(exchange, this::viewAgreement));
+        this.server.createContext("/quote", exchange -> handle(exchange, this::quote));
+        this.server.createContext("/revenue", exchange -> handle(exchange, this::revenue));
+        this.server.createContext("/utilization", exchange -> handle(exchange, this::utilization));
+        this.server.createContext("/availability", exchange -> handle(exchange, this::availability));
+        this.server.createContext("/next-available", exchange -> handle(exchange, this::nextAvailable));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting connections, lets in-flight requests finish, then closes the database
+    public void stop() {
+        server.stop(shutdownGraceSeconds);
+        executor.close();
+        Database.closeConnection();
+        stopped.countDown();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        if (!permits.tryAcquire()) {
+            respond(exchange, 503, "Server is at its concurrent request limit, retry shortly.");
+            return;
+        }
+
+        try {
+            handler.handle(exchange);
+        } catch (NumberFormatException ex) {
+            respond(exchange, 400, "Error converting value to number: " + ex.getMessage());
+        } catch (DateTimeParseException ex) {
+            respond(exchange, 400, "Error parsing date: " + ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            respond(exchange, 400, "Error: " + ex.getMessage());
+        } catch (ToolUnavailableException ex) {
+            respond(exchange, 409, "Error: " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            respond(exchange, 500, "Error: " + ex.getMessage());
+        } finally {
+            exchange.close();
+            permits.release();
+        }
+    }
+
+    private void checkout(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respond(exchange, 405, "Use POST to check out a tool.");
+            return;
+        }
+
+        CheckoutRequest request = CheckoutRequest.fromFields("request", FlatJson.parseObject(readBody(exchange)));
+        RentalAgreementDao agreement = ToolRentalService.checkoutAgreement(request.toolCode(), request.rentalDays(),
+                request.discountPercent(), request.checkoutDate(), request.holidayCalendar());
+
+        exchange.getResponseHeaders().set("Location", "/agreements/" + agreement.id);
+        respond(exchange, 201, ToolRentalService.formatRentalAgreement(agreement));
+    }
+
+    private void viewAgreement(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, 405, "Use GET to view an agreement.");
+            return;
+        }
+
+        String id = exchange.getRequestURI().getPath().substring("/agreements/".length());
+        RentalAgreementDao agreement = ToolRentalService.findRentalAgreement(id);
+        if (agreement == null) {
+            respond(exchange, 404, String.format("Rental agreement with id %s could not be found.", id));
+            return;
+        }
+
+        respond(exchange, 200, ToolRentalService.formatRentalAgreement(agreement));
+    }
+
+    private void quote(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, 405, "Use GET to request a quote.");
+            return;
+        }
+
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        String toolCode = requiredParameter(parameters, "toolCode");
+        LocalDate checkoutDate = CheckoutRequest.parseDate(requiredParameter(parameters, "checkoutDate"));
+        int discountPercent = Integer.parseInt(parameters.getOrDefault("discountPercent", "0"));
+        List<Quote> quotes = ToolRentalService.quote(toolCode,
+                Integer.parseInt(requiredParameter(parameters, "maxRentalDays")), discountPercent, checkoutDate,
+                parameters.getOrDefault("holidayCalendar", HolidayCalendar.DEFAULT_CALENDAR));
+
+        StringBuilder json = new StringBuilder(64 + quotes.size() * 160);
+        json.append("{\"toolCode\":").append(FlatJson.quote(toolCode))
+                .append(",\"checkoutDate\":\"").append(checkoutDate)
+                .append("\",\"discountPercent\":").append(discountPercent)
+                .append(",\"quotes\":[");
+        for (int i = 0; i < quotes.size(); i++) {
+            Quote quote = quotes.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"rentalDays\":").append(quote.rentalDays())
+                    .append(",\"dueDate\":\"").append(quote.dueDate())
+                    .append("\",\"chargeDays\":").append(quote.chargeDays())
+                    .append(",\"preDiscountChargeInCents\":").append(quote.preDiscountChargeInCents())
+                    .append(",\"discountAmountInCents\":").append(quote.discountAmountInCents())
+                    .append(",\"finalChargeInCents\":").append(quote.finalChargeInCents())
+                    .append('}');
+        }
+        json.append("]}");
+
+        respond(exchange, 200, JSON, json.toString());
+    }
+
+    private void revenue(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, 405, "Use GET to request revenue.");
+            return;
+        }
+
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        LocalDate from = CheckoutRequest.parseDate(requiredParameter(parameters, "from"));
+        LocalDate to = CheckoutRequest.parseDate(requiredParameter(parameters, "to"));
+
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"from\":\"").append(from)
+                .append("\",\"to\":\"").append(to)
+                .append("\",\"toolTypes\":");
+        appendTotals(json, "toolType", AgreementAggregates.getRevenueByToolType(from, to));
+        json.append('}');
+
+        respond(exchange, 200, JSON, json.toString());
+    }
+
+    private void utilization(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, 405, "Use GET to request utilization.");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder(256).append("{\"tools\":");
+        appendTotals(json, "toolCode", AgreementAggregates.getUtilizationByTool());
+        json.append('}');
+
+        respond(exchange, 200, JSON, json.toString());
+    }
+
+    private void availability(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, 405, "Use GET to check availability.");
+            return;
+        }
+
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        LocalDate from = CheckoutRequest.parseDate(requiredParameter(parameters, "from"));
+        LocalDate to = CheckoutRequest.parseDate(requiredParameter(parameters, "to"));
+        String toolCode = parameters.get("toolCode");
+
+        StringBuilder json = new StringBuilder(128);
+        if (toolCode != null && !toolCode.isBlank()) {
+            json.append("{\"toolCode\":").append(FlatJson.quote(toolCode))
+                    .append(",\"from\":\"").append(from)
+                    .append("\",\"to\":\"").append(to)
+                    .append("\",\"available\":").append(AvailabilityIndex.isAvailable(toolCode, from, to))
+                    .append('}');
+        } else {
+            json.append("{\"from\":\"").append(from)
+                    .append("\",\"to\":\"").append(to)
+                    .append("\",\"tools\":[");
+            List<String> available = AvailabilityIndex.findAvailableTools(from, to);
+            for (int i = 0; i < available.size(); i++) {
+                json.append(i == 0 ? "" : ",").append(FlatJson.quote(available.get(i)));
+            }
+            json.append("]}");
+        }
+
+        respond(exchange, 200, JSON, json.toString());
+    }
+
+    private void nextAvailable(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, 405, "Use GET to find the next available date.");
+            return;
+        }
+
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        String toolCode = requiredParameter(parameters, "toolCode");
+        LocalDate from = CheckoutRequest.parseDate(requiredParameter(parameters, "from"));
+        int rentalDays = Integer.parseInt(requiredParameter(parameters, "rentalDays"));
+        LocalDate checkoutDate = AvailabilityIndex.findNextAvailableDate(toolCode, from, rentalDays);
+
+        respond(exchange, 200, JSON, "{\"toolCode\":" + FlatJson.quote(toolCode) +
+                ",\"rentalDays\":" + rentalDays +
+                ",\"checkoutDate\":\"" + checkoutDate + "\"}");
+    }
+
+    // A JSON array with one object per entry, named by keyName
+    private static void appendTotals(StringBuilder json, String keyName, Map<String, AgreementAggregates.Totals> totals) {
+        json.append('[');
+        boolean first = true;
+        for (Map.Entry<String, AgreementAggregates.Totals> entry : totals.entrySet()) {
+            AgreementAggregates.Totals total = entry.getValue();
+            json.append(first ? "" : ",")
+                    .append("{\"").append(keyName).append("\":").append(FlatJson.quote(entry.getKey()))
+                    .append(",\"agreements\":").append(total.agreements())
+                    .append(",\"rentalDays\":").append(total.rentalDays())
+                    .append(",\"chargeDays\":").append(total.chargeDays())
+                    .append(",\"finalChargeInCents\":").append(total.finalChargeInCents())
+                    .append('}');
+            first = false;
+        }
+        json.append(']');
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String requiredParameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(String.format("Missing required parameter %s.", name));
+        }
+        return value;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body is too large.");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, TEXT, body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+// Size-bounded cache of agreements by id. Agreements never change once written, so entries are added on insert and on
+// read and are only evicted for space - or dropped together when the database is closed, since a recreated database
+// starts numbering ids again.
+public class AgreementCache {
+    private static final long DEFAULT_SIZE = 10_000;
+
+    private static final Cache<Integer, RentalAgreementDao> agreements = Caffeine.newBuilder()
+            .maximumSize(Long.parseLong(Database.getProperty("agreement.cache.size", String.valueOf(DEFAULT_SIZE))))
+            .recordStats()
+            .build();
+
+    static {
+        Database.onClose(AgreementCache::invalidateAll);
+    }
+
+    // Returns null when the agreement is not cached
+    static RentalAgreementDao get(int id) {
+        return agreements.getIfPresent(id);
+    }
+
+    static void put(RentalAgreementDao agreement) {
+        agreements.put(agreement.id, agreement);
+    }
+
+    static void invalidate(int id) {
+        agreements.invalidate(id);
+    }
+
+    public static void invalidateAll() {
+        agreements.invalidateAll();
+    }
+
+    public static long getHitCount() {
+        return agreements.stats().hitCount();
+    }
+
+    public static long getMissCount() {
+        return agreements.stats().missCount();
+    }
+
+    public static double getHitRatio() {
+        return agreements.stats().hitRate();
+    }
+}
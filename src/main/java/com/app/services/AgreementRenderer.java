@@ -0,0 +1,269 @@
+package com.app.services;
+
+import com.app.database.dao.RentalAgreementDao;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Writes rental agreements straight to an Appendable, so bulk output goes to the destination writer without building an
+// intermediate String per agreement. Dates and amounts are formatted with integer arithmetic rather than through
+// DateTimeFormatter and NumberFormat.
+//
+//   TEXT  the labelled agreement printed by checkout and view
+//   JSON  one flat object per agreement, with ISO dates and amounts in cents
+//   CSV   one row per agreement under CSV_HEADER, with ISO dates and amounts in cents
+public class AgreementRenderer {
+    public static final String CSV_HEADER = "id,tool_code,tool_type,tool_brand,rental_days,checkout_date,due_date," +
+            "daily_rental_charge_in_cents,charge_days,prediscount_charge_in_cents,discount_percent," +
+            "discount_amount_in_cents,final_charge_in_cents";
+
+    public enum Format {
+        TEXT, JSON, CSV;
+
+        public static Format fromName(String name) {
+            // JSON is written one object per line, so it also goes by the name of JSON Lines
+            if (name.equalsIgnoreCase("jsonl")) {
+                return JSON;
+            }
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException(String.format("Output format %s is not supported, use text, json or csv.", name));
+        }
+    }
+
+    public static String render(RentalAgreementDao dao, Format format) {
+        StringBuilder out = new StringBuilder(512);
+        try {
+            render(dao, format, out);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    // An amount in the same form as agreement charges, e.g. $1,234.56 or -$0.50
+    public static String formatDollars(long cents) {
+        StringBuilder out = new StringBuilder(16);
+        try {
+            appendDollars(cents, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    // value as a JSON string literal, escaped the same way as the strings in JSON agreements
+    public static String quoteJson(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2);
+        try {
+            appendJsonString(value, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public static void render(RentalAgreementDao dao, Format format, Appendable out) throws IOException {
+        switch (format) {
+            case TEXT -> renderText(dao, out);
+            case JSON -> renderJson(dao, out);
+            case CSV -> renderCsv(dao, out);
+        }
+    }
+
+    private static void renderText(RentalAgreementDao dao, Appendable out) throws IOException {
+        out.append("Id: ");
+        appendInt(dao.id, out);
+        out.append('\n');
+        out.append("Tool code: ").append(dao.tool.code).append('\n');
+        out.append("Tool type: ").append(dao.tool.type).append('\n');
+        out.append("Tool brand: ").append(dao.tool.brand).append('\n');
+        out.append("Rental days: ");
+        appendInt(dao.rentalDays, out);
+        out.append('\n');
+        out.append("Checkout date: ");
+        appendShortDate(dao.checkoutDate.getYear(), dao.checkoutDate.getMonthValue(), dao.checkoutDate.getDayOfMonth(), out);
+        out.append("\nDue date: ");
+        appendShortDate(dao.dueDate.getYear(), dao.dueDate.getMonthValue(), dao.dueDate.getDayOfMonth(), out);
+        out.append("\nDaily rental charge: ");
+        appendDollars(dao.dailyRentalChargeInCents, out);
+        out.append("\nCharge days: ");
+        appendInt(dao.chargeDays, out);
+        out.append("\nPre-discount charge: ");
+        appendDollars(dao.preDiscountChargeInCents, out);
+        out.append("\nDiscount percent: ");
+        appendInt(dao.discountPercent, out);
+        out.append('%');
+        out.append("\nDiscount amount: ");
+        appendDollars(dao.discountAmountInCents, out);
+        out.append("\nFinal charge: ");
+        appendDollars(dao.finalChargeInCents, out);
+    }
+
+    private static void renderJson(RentalAgreementDao dao, Appendable out) throws IOException {
+        out.append("{\"id\":");
+        appendInt(dao.id, out);
+        out.append(",\"toolCode\":");
+        appendJsonString(dao.tool.code, out);
+        out.append(",\"toolType\":");
+        appendJsonString(dao.tool.type, out);
+        out.append(",\"toolBrand\":");
+        appendJsonString(dao.tool.brand, out);
+        out.append(",\"rentalDays\":");
+        appendInt(dao.rentalDays, out);
+        out.append(",\"checkoutDate\":\"");
+        appendIsoDate(dao.checkoutDate.getYear(), dao.checkoutDate.getMonthValue(), dao.checkoutDate.getDayOfMonth(), out);
+        out.append("\",\"dueDate\":\"");
+        appendIsoDate(dao.dueDate.getYear(), dao.dueDate.getMonthValue(), dao.dueDate.getDayOfMonth(), out);
+        out.append("\",\"dailyRentalChargeInCents\":");
+        appendInt(dao.dailyRentalChargeInCents, out);
+        out.append(",\"chargeDays\":");
+        appendInt(dao.chargeDays, out);
+        out.append(",\"preDiscountChargeInCents\":");
+        appendInt(dao.preDiscountChargeInCents, out);
+        out.append(",\"discountPercent\":");
+        appendInt(dao.discountPercent, out);
+        out.append(",\"discountAmountInCents\":");
+        appendInt(dao.discountAmountInCents, out);
+        out.append(",\"finalChargeInCents\":");
+        appendInt(dao.finalChargeInCents, out);
+        out.append('}');
+    }
+
+    private static void renderCsv(RentalAgreementDao dao, Appendable out) throws IOException {
+        appendInt(dao.id, out);
+        out.append(',');
+        appendCsvField(dao.tool.code, out);
+        out.append(',');
+        appendCsvField(dao.tool.type, out);
+        out.append(',');
+        appendCsvField(dao.tool.brand, out);
+        out.append(',');
+        appendInt(dao.rentalDays, out);
+        out.append(',');
+        appendIsoDate(dao.checkoutDate.getYear(), dao.checkoutDate.getMonthValue(), dao.checkoutDate.getDayOfMonth(), out);
+        out.append(',');
+        appendIsoDate(dao.dueDate.getYear(), dao.dueDate.getMonthValue(), dao.dueDate.getDayOfMonth(), out);
+        out.append(',');
+        appendInt(dao.dailyRentalChargeInCents, out);
+        out.append(',');
+        appendInt(dao.chargeDays, out);
+        out.append(',');
+        appendInt(dao.preDiscountChargeInCents, out);
+        out.append(',');
+        appendInt(dao.discountPercent, out);
+        out.append(',');
+        appendInt(dao.discountAmountInCents, out);
+        out.append(',');
+        appendInt(dao.finalChargeInCents, out);
+    }
+
+    // MM/dd/yy, as printed on agreements
+    private static void appendShortDate(int year, int month, int day, Appendable out) throws IOException {
+        appendTwoDigits(month, out);
+        out.append('/');
+        appendTwoDigits(day, out);
+        out.append('/');
+        appendTwoDigits(Math.floorMod(year, 100), out);
+    }
+
+    // yyyy-MM-dd
+    private static void appendIsoDate(int year, int month, int day, Appendable out) throws IOException {
+        if (year >= 0 && year < 1000) {
+            out.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        appendInt(year, out);
+        out.append('-');
+        appendTwoDigits(month, out);
+        out.append('-');
+        appendTwoDigits(day, out);
+    }
+
+    private static void appendInt(int value, Appendable out) throws IOException {
+        if (value < 0) {
+            out.append('-');
+        }
+        appendDigits(Math.abs((long) value), false, out);
+    }
+
+    // Writes digits most significant first, optionally with a comma between each group of three
+    private static void appendDigits(long value, boolean grouped, Appendable out) throws IOException {
+        long divisor = 1;
+        int position = 0;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+            position += 1;
+        }
+        for (; divisor > 0; divisor /= 10, position -= 1) {
+            out.append((char) ('0' + value / divisor % 10));
+            if (grouped && position > 0 && position % 3 == 0) {
+                out.append(',');
+            }
+        }
+    }
+
+    private static void appendTwoDigits(int value, Appendable out) throws IOException {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    // US currency with thousands separators, e.g. $1,234.56 or -$0.50
+    static void appendDollars(long cents, Appendable out) throws IOException {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append('$');
+
+        appendDigits(cents / 100, true, out);
+        out.append('.');
+        appendTwoDigits((int) (cents % 100), out);
+    }
+
+    private static void appendJsonString(String value, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    private static void appendCsvField(String value, Appendable out) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.append(value);
+            return;
+        }
+
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
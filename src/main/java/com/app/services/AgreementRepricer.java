@@ -0,0 +1,230 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolTypeChargesDao;
+import com.app.database.repository.RentalAgreementRepository;
+import com.app.database.repository.ToolRepository;
+import com.app.metrics.Metrics;
+import org.jdbi.v3.core.result.ResultIterator;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+// What-if pricing of past agreements under a different rate table, for when tool_type_charges is about to change.
+// Every agreement checked out in a period is priced again with the functions checkout prices with, and the new
+// charges are summed by tool type next to what the agreements were charged. Nothing is written.
+//
+// The ids of the agreements checked out in the period are split into ranges, like AgreementAggregates.rebuild splits
+// them, so busy days do not make one range much longer than the rest. A ForkJoinPool of the given number of threads
+// reads and prices the ranges in parallel, each on its own pooled read connection, and merges their sums. Each thread
+// holds a connection while it reads, so there may be no more threads than db.pool.size. Agreements do not record the
+// holiday calendar they were priced with, so all of them are repriced with the one given. Agreements still in the
+// write-behind queue or the journal are not included.
+public final class AgreementRepricer {
+    // Ids are split into more ranges than threads, so ranges holding few of the period's agreements, among others
+    // checked out outside it, do not leave the other threads idle
+    private static final int RANGES_PER_THREAD = 8;
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final LongAdder repricedAgreements = Metrics.counter("app_repriced_agreements_total",
+            "Agreements read by what-if repricing");
+
+    // Charge days and final charges of a tool type's agreements as saved and as repriced
+    public record ToolTypeDelta(String toolType, long agreements, long chargeDays, long repricedChargeDays,
+                                long finalChargeInCents, long repricedFinalChargeInCents) {
+        public long differenceInCents() {
+            return repricedFinalChargeInCents - finalChargeInCents;
+        }
+    }
+
+    public record RepricingResult(List<ToolTypeDelta> toolTypes, int threads) {
+        public long agreements() {
+            return toolTypes.stream().mapToLong(ToolTypeDelta::agreements).sum();
+        }
+    }
+
+    // Reprices the agreements checked out from `from` through `to`. Each of rates replaces the current charges of its
+    // tool type; other types keep their current charges. Tool types are listed in name order, those without
+    // agreements in the period left out.
+    public static RepricingResult reprice(List<ToolTypeChargesDao> rates, LocalDate from, LocalDate to,
+                                          String holidayCalendar, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Repricing thread count must be at least 1.");
+        }
+        if (threads > Database.getReadPoolSize()) {
+            throw new IllegalArgumentException(String.format(
+                    "Repricing thread count must not be more than db.pool.size, %d.", Database.getReadPoolSize()));
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The end of a repricing period must not be before its start.");
+        }
+
+        Map<String, ToolTypeChargesDao> chargesByType = new TreeMap<>();
+        for (ToolTypeChargesDao charges : Database.getJdbi().withExtension(ToolRepository.class,
+                ToolRepository::getAllChargeDetails)) {
+            chargesByType.put(charges.toolType, charges);
+        }
+        for (ToolTypeChargesDao charges : rates) {
+            if (!chargesByType.containsKey(charges.toolType)) {
+                throw new IllegalArgumentException(String.format("Tool type %s could not be found.", charges.toolType));
+            }
+            if (charges.dailyChargeInCents < 0) {
+                throw new IllegalArgumentException(String.format("Daily charge for tool type %s must not be negative.",
+                        charges.toolType));
+            }
+            chargesByType.put(charges.toolType, charges);
+        }
+
+        RateTable rateTable = new RateTable(new ArrayList<>(chargesByType.values()),
+                HolidayCalendar.forName(holidayCalendar), Integer.parseInt(Database.getProperty("reprice.fetch_size",
+                String.valueOf(DEFAULT_FETCH_SIZE))));
+        int[] ids = Database.getJdbi().withExtension(RentalAgreementRepository.class, repository ->
+                new int[]{repository.getFirstAgreementId(from, to), repository.getLastAgreementId(from, to)});
+        if (ids[0] == 0) {
+            return new RepricingResult(List.of(), threads);
+        }
+        long rangeIds = ((long) ids[1] - ids[0] + 1) / ((long) threads * RANGES_PER_THREAD) + 1;
+
+        Sums sums;
+        try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+            sums = pool.invoke(new RepriceTask(rateTable, from, to, ids[0], ids[1], rangeIds));
+        }
+        return new RepricingResult(sums.toDeltas(rateTable.charges()), threads);
+    }
+
+    private record RateTable(List<ToolTypeChargesDao> charges, Map<String, Integer> indexes, HolidayCalendar calendar,
+                             int fetchSize) {
+        RateTable(List<ToolTypeChargesDao> charges, HolidayCalendar calendar, int fetchSize) {
+            this(charges, indexByType(charges), calendar, fetchSize);
+        }
+
+        private static Map<String, Integer> indexByType(List<ToolTypeChargesDao> charges) {
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < charges.size(); i++) {
+                indexes.put(charges.get(i).toolType, i);
+            }
+            return indexes;
+        }
+    }
+
+    // Halves its range of ids until it is no longer than rangeIds, then reads and prices the agreements in that range
+    private static final class RepriceTask extends RecursiveTask<Sums> {
+        private static final long serialVersionUID = 1L;
+
+        private final RateTable rateTable;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final int firstId;
+        private final int lastId;
+        private final long rangeIds;
+
+        RepriceTask(RateTable rateTable, LocalDate from, LocalDate to, int firstId, int lastId, long rangeIds) {
+            this.rateTable = rateTable;
+            this.from = from;
+            this.to = to;
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.rangeIds = rangeIds;
+        }
+
+        @Override
+        protected Sums compute() {
+            if ((long) lastId - firstId < rangeIds) {
+                return priceRange();
+            }
+
+            int middle = firstId + (lastId - firstId) / 2;
+            RepriceTask first = new RepriceTask(rateTable, from, to, firstId, middle, rangeIds);
+            first.fork();
+            Sums sums = new RepriceTask(rateTable, from, to, middle + 1, lastId, rangeIds).compute();
+            return sums.add(first.join());
+        }
+
+        private Sums priceRange() {
+            Sums sums = new Sums(rateTable.charges().size());
+            Database.getJdbi().useExtension(RentalAgreementRepository.class, repository -> {
+                try (ResultIterator<RentalAgreementDao> agreements = repository.iterateAgreementsByIds(firstId, lastId,
+                        from, to, rateTable.fetchSize()).iterator()) {
+                    while (agreements.hasNext()) {
+                        sums.add(rateTable, agreements.next());
+                    }
+                }
+            });
+            repricedAgreements.add(sums.count());
+            return sums;
+        }
+    }
+
+    // Running totals for each tool type, indexed as in the rate table
+    private static final class Sums {
+        private final long[] agreements;
+        private final long[] chargeDays;
+        private final long[] repricedChargeDays;
+        private final long[] finalCharges;
+        private final long[] repricedFinalCharges;
+
+        Sums(int toolTypes) {
+            agreements = new long[toolTypes];
+            chargeDays = new long[toolTypes];
+            repricedChargeDays = new long[toolTypes];
+            finalCharges = new long[toolTypes];
+            repricedFinalCharges = new long[toolTypes];
+        }
+
+        void add(RateTable rateTable, RentalAgreementDao agreement) {
+            Integer index = rateTable.indexes().get(agreement.tool.type);
+            if (index == null) {
+                throw new IllegalStateException(String.format("Charges for tool type %s could not be found.",
+                        agreement.tool.type));
+            }
+
+            ToolTypeChargesDao charges = rateTable.charges().get(index);
+            int repriced = ToolRentalService.getChargeDays(charges, rateTable.calendar(), agreement.checkoutDate,
+                    agreement.dueDate);
+            agreements[index] += 1;
+            chargeDays[index] += agreement.chargeDays;
+            repricedChargeDays[index] += repriced;
+            finalCharges[index] += agreement.finalChargeInCents;
+            repricedFinalCharges[index] += ToolRentalService.getFinalChargeInCents(repriced,
+                    charges.dailyChargeInCents, agreement.discountPercent);
+        }
+
+        Sums add(Sums other) {
+            for (int i = 0; i < agreements.length; i++) {
+                agreements[i] += other.agreements[i];
+                chargeDays[i] += other.chargeDays[i];
+                repricedChargeDays[i] += other.repricedChargeDays[i];
+                finalCharges[i] += other.finalCharges[i];
+                repricedFinalCharges[i] += other.repricedFinalCharges[i];
+            }
+            return this;
+        }
+
+        long count() {
+            long count = 0;
+            for (long typeCount : agreements) {
+                count += typeCount;
+            }
+            return count;
+        }
+
+        List<ToolTypeDelta> toDeltas(List<ToolTypeChargesDao> charges) {
+            List<ToolTypeDelta> deltas = new ArrayList<>();
+            for (int i = 0; i < agreements.length; i++) {
+                if (agreements[i] > 0) {
+                    deltas.add(new ToolTypeDelta(charges.get(i).toolType, agreements[i], chargeDays[i],
+                            repricedChargeDays[i], finalCharges[i], repricedFinalCharges[i]));
+                }
+            }
+            return deltas;
+        }
+    }
+}
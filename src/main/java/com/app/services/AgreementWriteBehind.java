@@ -0,0 +1,280 @@
+package com.app.services;
+
+import com.app.database.AgreementAggregates;
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.repository.RentalAgreementRepository;
+import com.app.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Optional write-behind saving of checkouts (agreement.write_behind). A checkout takes its id from a block reserved
+// up front and returns at once; the agreement is queued and a background thread commits queued agreements together,
+// one transaction per group, so the caller never waits on SQLite's commit.
+//
+// - agreement.write_behind.flush_interval_ms bounds how long an agreement waits for others to share its commit, and
+//   so how much can be lost if the process dies.
+// - When agreement.write_behind.max_queue agreements are waiting, a checkout waits up to
+//   agreement.write_behind.offer_timeout_ms for space and then saves its own agreement synchronously.
+// - Queued agreements are committed before the database closes. A checkout that reaches a writer which has already
+//   stopped saves its agreement synchronously.
+// - A queued agreement whose insert fails, even on its own, is lost: the checkout has already returned its id. It is
+//   logged and counted in app_write_behind_failures_total.
+//
+// Queued agreements can be viewed by id before they are written, but are not seen by the availability check, so
+// checkouts with checkout.enforce_availability always save synchronously. Write-behind only applies to the sqlite
+// agreement store; saves to the journal store already return without waiting on SQLite.
+public class AgreementWriteBehind {
+    private static final Object lock = new Object();
+    private static final LongAdder failures = Metrics.counter("app_write_behind_failures_total",
+            "Queued agreements that could not be written and were lost");
+    private static Writer writer;
+
+    public record Stats(int queued, long written, long synchronousFallbacks) {
+    }
+
+    static {
+        Database.onBeforeClose(AgreementWriteBehind::stop);
+    }
+
+    // Read on every checkout, so the mode can be switched between database sessions
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(Database.getProperty("agreement.write_behind", "false"))
+                && Database.getProperty("agreement.store", "sqlite").equals("sqlite");
+    }
+
+    // Assigns the agreement its id and queues it to be written
+    static void save(RentalAgreementDao agreement) {
+        getWriter().save(agreement);
+    }
+
+    // Returns null when the agreement is not waiting to be written
+    static RentalAgreementDao getQueued(int id) {
+        Writer current;
+        synchronized (lock) {
+            current = writer;
+        }
+        return current == null ? null : current.pending.get(id);
+    }
+
+    // Waits until every agreement queued so far has been written
+    public static void flush() {
+        Writer current;
+        synchronized (lock) {
+            current = writer;
+        }
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    public static Stats getStats() {
+        synchronized (lock) {
+            return writer == null ? new Stats(0, 0, 0) : writer.getStats();
+        }
+    }
+
+    // Writes everything still queued and stops the background thread. The next save starts a new one, with a new id
+    // block, since the database may have been recreated in between.
+    private static void stop() {
+        Writer stopped;
+        synchronized (lock) {
+            stopped = writer;
+            writer = null;
+        }
+        if (stopped != null) {
+            stopped.stop();
+        }
+    }
+
+    private static Writer getWriter() {
+        synchronized (lock) {
+            if (writer == null) {
+                writer = new Writer();
+            }
+            return writer;
+        }
+    }
+
+    private static class Writer implements Runnable {
+        private final long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(Database.getProperty("agreement.write_behind.flush_interval_ms", "20")));
+        private final long offerTimeoutMillis =
+                Long.parseLong(Database.getProperty("agreement.write_behind.offer_timeout_ms", "100"));
+        private final int batchSize = Integer.parseInt(Database.getProperty("agreement.write_behind.batch_size", "500"));
+        private final int idBlockSize =
+                Integer.parseInt(Database.getProperty("agreement.write_behind.id_block_size", "1000"));
+        private final BlockingQueue<RentalAgreementDao> queue = new ArrayBlockingQueue<>(
+                Integer.parseInt(Database.getProperty("agreement.write_behind.max_queue", "10000")));
+        private final Map<Integer, RentalAgreementDao> pending = new ConcurrentHashMap<>();
+        private final Thread thread = new Thread(this, "agreement-write-behind");
+        private final LongAdder written = new LongAdder();
+        private final LongAdder synchronousFallbacks = new LongAdder();
+        // Held for reading while a save enqueues and for writing while stop() clears running, so nothing is queued
+        // once the background thread may have drained the queue for the last time
+        private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+        private volatile boolean running = true;
+        private final Object idLock = new Object();
+        private int nextId;
+        private int idBlockEnd;
+        // Agreements handed to save, and those written or given up on; flush waits for the second to catch up
+        private long accepted;
+        private long completed;
+
+        Writer() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void save(RentalAgreementDao agreement) {
+            agreement.id = allocateId();
+            pending.put(agreement.id, agreement);
+            AgreementCache.put(agreement);
+            synchronized (this) {
+                accepted += 1;
+            }
+
+            boolean queued = false;
+            stateLock.readLock().lock();
+            try {
+                if (running) {
+                    queued = queue.offer(agreement, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stateLock.readLock().unlock();
+            }
+            // The queue is full or the writer has stopped, so nothing would write it from the queue
+            if (!queued) {
+                synchronousFallbacks.increment();
+                write(List.of(agreement));
+            }
+        }
+
+        synchronized void flush() {
+            long target = accepted;
+            while (completed < target) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        Stats getStats() {
+            return new Stats(queue.size(), written.sum(), synchronousFallbacks.sum());
+        }
+
+        void stop() {
+            stateLock.writeLock().lock();
+            try {
+                running = false;
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<RentalAgreementDao> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    RentalAgreementDao first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+
+                    // Give later checkouts until the flush interval to join this commit
+                    batch.add(first);
+                    long deadline = System.nanoTime() + flushIntervalNanos;
+                    while (batch.size() < batchSize && running) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() == batchSize || remaining <= 0) {
+                            break;
+                        }
+                        RentalAgreementDao next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                    queue.drainTo(batch, batchSize - batch.size());
+                } catch (InterruptedException e) {
+                    // Only stop() ends the thread, and it does so through running
+                    continue;
+                }
+
+                write(batch);
+                batch.clear();
+            }
+        }
+
+        // Commits the agreements in one transaction, falling back to one at a time so a bad record only loses itself
+        private void write(List<RentalAgreementDao> agreements) {
+            try {
+                Database.write(handle -> {
+                    handle.attach(RentalAgreementRepository.class).insertAllWithIds(agreements);
+                    AgreementAggregates.recordInserted(agreements);
+                    return null;
+                });
+                AvailabilityIndex.addAll(agreements);
+                written.add(agreements.size());
+            } catch (RuntimeException ex) {
+                for (RentalAgreementDao agreement : agreements) {
+                    try {
+                        Database.write(handle -> {
+                            handle.attach(RentalAgreementRepository.class).insertWithId(agreement);
+                            AgreementAggregates.recordInserted(List.of(agreement));
+                            return null;
+                        });
+                        AvailabilityIndex.add(agreement);
+                        written.increment();
+                    } catch (RuntimeException rowEx) {
+                        failures.increment();
+                        AgreementCache.invalidate(agreement.id);
+                        System.out.println("Error saving rental agreement " + agreement.id + ": " + rowEx.getMessage());
+                    }
+                }
+            }
+
+            for (RentalAgreementDao agreement : agreements) {
+                pending.remove(agreement.id);
+            }
+            synchronized (this) {
+                completed += agreements.size();
+                notifyAll();
+            }
+        }
+
+        // Ids come from blocks reserved in the database's id sequence, so they never collide with agreements saved
+        // synchronously. Ids left unused when the process stops are skipped.
+        private int allocateId() {
+            synchronized (idLock) {
+                if (nextId == idBlockEnd) {
+                    int firstId = Database.write(handle ->
+                            handle.attach(RentalAgreementRepository.class).reserveIds(idBlockSize));
+                    nextId = firstId;
+                    idBlockEnd = firstId + idBlockSize;
+                }
+                return nextId++;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.repository.ToolRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory index of when each tool is rented, for availability questions that would otherwise scan
+// rental_agreements: is a tool free for a period, when is it next free, and which tools are free for a period. It is
+// read from the database on first use and updated as agreements are saved. A tool is rented from its checkout date
+// up to, but not including, its due date.
+public class AvailabilityIndex {
+    private static final Object lock = new Object();
+    private static volatile Snapshot snapshot;
+
+    // Tool codes known when the index was loaded, and each tool's rentals. A tool's intervals are replaced, never
+    // modified, so readers need no locking.
+    private record Snapshot(List<String> toolCodes, Map<String, RentalIntervals> intervals) {
+    }
+
+    static {
+        Database.onClose(AvailabilityIndex::invalidate);
+    }
+
+    // True when the tool has no rental covering any day from `from` up to, but not including, `to`
+    public static boolean isAvailable(String toolCode, LocalDate from, LocalDate to) {
+        validatePeriod(from, to);
+        return getIntervals(toolCode).isFree((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    // The earliest checkout date on or after `from` for which the tool is free for the whole rental
+    public static LocalDate findNextAvailableDate(String toolCode, LocalDate from, int rentalDays) {
+        if (rentalDays < 1) {
+            throw new IllegalArgumentException("Rental day count must be at least 1.");
+        }
+        return LocalDate.ofEpochDay(getIntervals(toolCode).findNextFree((int) from.toEpochDay(), rentalDays));
+    }
+
+    // Codes of every tool that is free for the whole period, in code order
+    public static List<String> findAvailableTools(LocalDate from, LocalDate to) {
+        validatePeriod(from, to);
+        Snapshot current = getSnapshot();
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+
+        List<String> available = new ArrayList<>();
+        for (String toolCode : current.toolCodes()) {
+            if (current.intervals().getOrDefault(toolCode, RentalIntervals.EMPTY).isFree(fromDay, toDay)) {
+                available.add(toolCode);
+            }
+        }
+        return available;
+    }
+
+    // Drops the index so the next query reads it again, e.g. after tools are added
+    public static void invalidate() {
+        synchronized (lock) {
+            snapshot = null;
+        }
+    }
+
+    static void add(RentalAgreementDao agreement) {
+        addAll(List.of(agreement));
+    }
+
+    // Called once agreements are committed. Until the index has been loaded there is nothing to update, since loading
+    // reads them from the database.
+    static void addAll(List<RentalAgreementDao> agreements) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+
+            Map<String, Periods> periodsByTool = new HashMap<>();
+            for (RentalAgreementDao agreement : agreements) {
+                periodsByTool.computeIfAbsent(agreement.tool.code, code -> new Periods())
+                        .add(agreement.checkoutDate, agreement.dueDate);
+            }
+            periodsByTool.forEach((toolCode, periods) -> current.intervals().put(toolCode,
+                    current.intervals().getOrDefault(toolCode, RentalIntervals.EMPTY).withRentals(periods.starts(), periods.ends())));
+        }
+    }
+
+    private static RentalIntervals getIntervals(String toolCode) {
+        Snapshot current = getSnapshot();
+        RentalIntervals intervals = current.intervals().get(toolCode);
+        if (intervals != null) {
+            return intervals;
+        }
+        if (ToolCatalog.get(toolCode) == null) {
+            throw new IllegalArgumentException(String.format("Tool code %s could not be found.", toolCode));
+        }
+        return RentalIntervals.EMPTY;
+    }
+
+    private static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        // Loading holds the lock, so an agreement saved meanwhile is added once loading finishes; if the load already
+        // read it, merging the same period again changes nothing
+        synchronized (lock) {
+            if (snapshot == null) {
+                snapshot = load();
+            }
+            return snapshot;
+        }
+    }
+
+    private static Snapshot load() {
+        List<String> toolCodes = Database.getJdbi().onDemand(ToolRepository.class).findAllTools().stream()
+                .map(tool -> tool.code)
+                .sorted()
+                .toList();
+
+        Map<String, Periods> periodsByTool = new HashMap<>();
+        Database.getAgreementStore().forEachRentalPeriod(period -> periodsByTool
+                .computeIfAbsent(period.toolCode, code -> new Periods())
+                .add(period.checkoutDate, period.dueDate));
+
+        Map<String, RentalIntervals> intervals = new ConcurrentHashMap<>();
+        periodsByTool.forEach((toolCode, periods) ->
+                intervals.put(toolCode, RentalIntervals.EMPTY.withRentals(periods.starts(), periods.ends())));
+        return new Snapshot(toolCodes, intervals);
+    }
+
+    private static void validatePeriod(LocalDate from, LocalDate to) {
+        if (!to.isAfter(from)) {
+            throw new IllegalArgumentException("The end of an availability period must be after its start.");
+        }
+    }
+
+    // Growable arrays of rental start and end days for one tool
+    private static class Periods {
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private int size = 0;
+
+        void add(LocalDate checkoutDate, LocalDate dueDate) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = (int) checkoutDate.toEpochDay();
+            ends[size] = (int) dueDate.toEpochDay();
+            size += 1;
+        }
+
+        int[] starts() {
+            return Arrays.copyOf(starts, size);
+        }
+
+        int[] ends() {
+            return Arrays.copyOf(ends, size);
+        }
+    }
+}
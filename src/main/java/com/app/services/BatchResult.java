@@ -0,0 +1,4 @@
+package com.app.services;
+
+public record BatchResult(int accepted) {
+}
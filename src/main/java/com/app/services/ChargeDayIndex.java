@@ -0,0 +1,117 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.ToolTypeChargesDao;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Running totals of chargeable days over a fixed window of years, one array per combination of charge flags, so the
+// charge days of any rental inside the window are a subtraction: prefix[due + 1] - prefix[checkout + 1]. Every tool
+// type with the same flags shares an array. Each day's class (weekday, weekend or holiday) is computed once per
+// calendar; an array for a flag combination is built from those classes the first time a tool type needs it.
+//
+// With the default window of 1990-2100 a calendar holds about 40 KB of day classes plus 160 KB per flag combination
+// in use.
+final class ChargeDayIndex {
+    // Charge flag bits, also used as the class of each day
+    static final int WEEKDAY = 1;
+    static final int WEEKEND = 2;
+    static final int HOLIDAY = 4;
+    private static final int MASK_COUNT = 8;
+
+    private static final int firstYear = Integer.parseInt(Database.getProperty("charge_index.first_year", "1990"));
+    private static final int lastYear = Integer.parseInt(Database.getProperty("charge_index.last_year", "2100"));
+
+    private final HolidayCalendar calendar;
+    private final long firstDay;
+    private final int dayCount;
+    private final AtomicReferenceArray<int[]> prefixByMask = new AtomicReferenceArray<>(MASK_COUNT);
+    private final AtomicLong buildNanos = new AtomicLong();
+    private volatile byte[] dayClasses;
+
+    ChargeDayIndex(HolidayCalendar calendar) {
+        this(calendar, firstYear, lastYear);
+    }
+
+    ChargeDayIndex(HolidayCalendar calendar, int firstYear, int lastYear) {
+        this.calendar = calendar;
+        this.firstDay = LocalDate.of(firstYear, 1, 1).toEpochDay();
+        this.dayCount = (int) (LocalDate.of(lastYear + 1, 1, 1).toEpochDay() - firstDay);
+    }
+
+    static int getMask(ToolTypeChargesDao charges) {
+        return (charges.hasWeekdayCharge ? WEEKDAY : 0)
+                | (charges.hasWeekendCharge ? WEEKEND : 0)
+                | (charges.hasHolidayCharge ? HOLIDAY : 0);
+    }
+
+    // Charge days from the day after checkout through the due date, or -1 when the rental is outside the window
+    int getChargeDays(int mask, LocalDate checkoutDate, LocalDate dueDate) {
+        long from = checkoutDate.toEpochDay() + 1 - firstDay;
+        long to = dueDate.toEpochDay() + 1 - firstDay;
+        if (from < 0 || to > dayCount || to < from) {
+            return -1;
+        }
+
+        int[] prefix = prefixByMask.get(mask);
+        if (prefix == null) {
+            prefix = buildPrefix(mask);
+        }
+        return prefix[(int) to] - prefix[(int) from];
+    }
+
+    // Heap held by the day classes and the arrays built so far
+    long getMemoryBytes() {
+        long bytes = dayClasses == null ? 0 : dayClasses.length;
+        for (int mask = 0; mask < MASK_COUNT; mask++) {
+            int[] prefix = prefixByMask.get(mask);
+            bytes += prefix == null ? 0 : (long) prefix.length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    // Total time spent classifying days and building arrays
+    long getBuildNanos() {
+        return buildNanos.get();
+    }
+
+    private int[] buildPrefix(int mask) {
+        long started = System.nanoTime();
+        byte[] classes = getDayClasses();
+        int[] prefix = new int[dayCount + 1];
+        for (int i = 0; i < dayCount; i++) {
+            prefix[i + 1] = prefix[i] + ((classes[i] & mask) != 0 ? 1 : 0);
+        }
+        buildNanos.addAndGet(System.nanoTime() - started);
+
+        // Two threads may build the same array; both results are identical, so keep whichever was stored first
+        return prefixByMask.compareAndSet(mask, null, prefix) ? prefix : prefixByMask.get(mask);
+    }
+
+    private byte[] getDayClasses() {
+        byte[] classes = dayClasses;
+        if (classes != null) {
+            return classes;
+        }
+
+        synchronized (this) {
+            if (dayClasses == null) {
+                long started = System.nanoTime();
+                byte[] built = new byte[dayCount];
+                LocalDate date = LocalDate.ofEpochDay(firstDay);
+                for (int i = 0; i < dayCount; i++, date = date.plusDays(1)) {
+                    if (calendar.isHoliday(date)) {
+                        built[i] = HOLIDAY;
+                    } else {
+                        built[i] = (byte) (CalendarUtility.isWeekend(date) ? WEEKEND : WEEKDAY);
+                    }
+                }
+                dayClasses = built;
+                buildNanos.addAndGet(System.nanoTime() - started);
+            }
+            return dayClasses;
+        }
+    }
+}
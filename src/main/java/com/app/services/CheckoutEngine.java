@@ -0,0 +1,61 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+
+import java.time.LocalDate;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Checkouts that respect availability: a tool cannot be rented out for a period that overlaps an agreement it already
+// has. Each tool id maps to one of a fixed set of locks, held from the availability check until the agreement is
+// saved, so checkouts of the same tool are serialized while checkouts of different tools only meet at the database
+// writer. Pricing happens before the lock is taken.
+//
+// ToolRentalService routes every checkout through here when checkout.enforce_availability is true. The locks are
+// per process, so availability is only guaranteed when a single process writes to the database.
+public class CheckoutEngine {
+    private static final int DEFAULT_LOCK_STRIPES = 64;
+
+    private static final ReentrantLock[] locks = createLocks(
+            Integer.parseInt(Database.getProperty("checkout.lock_stripes", String.valueOf(DEFAULT_LOCK_STRIPES))));
+
+    public static RentalAgreementDao checkout(String toolCode, int rentalDays, int discountPercent,
+                                              LocalDate checkoutDate, String holidayCalendar) {
+        RentalAgreementDao agreementDao = ToolRentalService.priceAgreement(toolCode, rentalDays, discountPercent,
+                checkoutDate, holidayCalendar);
+        reserve(agreementDao);
+
+        return agreementDao;
+    }
+
+    // Read on every checkout, like agreement.write_behind, so the mode can be switched between database sessions
+    static boolean isEnforcingAvailability() {
+        return Boolean.parseBoolean(Database.getProperty("checkout.enforce_availability", "false"));
+    }
+
+    // Saves a priced agreement unless its tool is already rented during any part of the same period
+    static void reserve(RentalAgreementDao agreementDao) {
+        ReentrantLock lock = locks[agreementDao.tool.id & (locks.length - 1)];
+        lock.lock();
+        try {
+            if (Database.getAgreementStore().hasOverlappingAgreement(agreementDao.tool.id, agreementDao.checkoutDate,
+                    agreementDao.dueDate)) {
+                throw new ToolUnavailableException(String.format("Tool %s is already rented between %s and %s.",
+                        agreementDao.tool.code, agreementDao.checkoutDate, agreementDao.dueDate));
+            }
+            ToolRentalService.saveAgreement(agreementDao);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Rounded up to a power of two so a tool id selects its lock with a mask
+    private static ReentrantLock[] createLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        ReentrantLock[] created = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            created[i] = new ReentrantLock();
+        }
+        return created;
+    }
+}
@@ -0,0 +1,49 @@
+package com.app.services;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+// One checkout in a batch. The reference is echoed back with rejects so callers can locate the source record.
+public record CheckoutRequest(String reference, String toolCode, int rentalDays, int discountPercent,
+                              LocalDate checkoutDate, String holidayCalendar) {
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            DateTimeFormatter.ofPattern("M/d/yy"),
+            DateTimeFormatter.ofPattern("M/d/yyyy")
+    };
+
+    public CheckoutRequest(String reference, String toolCode, int rentalDays, int discountPercent, LocalDate checkoutDate) {
+        this(reference, toolCode, rentalDays, discountPercent, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR);
+    }
+
+    // Builds a request from named fields: toolCode, rentalDays, discountPercent, checkoutDate and, optionally,
+    // holidayCalendar. A field mapped to null counts as missing.
+    public static CheckoutRequest fromFields(String reference, Map<String, String> fields) {
+        String holidayCalendar = fields.get("holidayCalendar");
+        return new CheckoutRequest(reference, required(fields, "toolCode"),
+                Integer.parseInt(required(fields, "rentalDays")),
+                Integer.parseInt(required(fields, "discountPercent")),
+                parseDate(required(fields, "checkoutDate")),
+                holidayCalendar != null ? holidayCalendar : HolidayCalendar.DEFAULT_CALENDAR);
+    }
+
+    // Accepts the same m/d/yy or m/d/yyyy dates as the command line
+    public static LocalDate parseDate(String date) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(date, format);
+            } catch (DateTimeParseException _) {
+            }
+        }
+        return LocalDate.parse(date, DATE_FORMATS[0]);
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException(String.format("Missing field %s.", name));
+        }
+        return value;
+    }
+}
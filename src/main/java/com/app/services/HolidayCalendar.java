@@ -0,0 +1,201 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.HolidayRuleDao;
+import com.app.database.repository.HolidayCalendarRepository;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.MonthDay;
+import java.time.Year;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// A named set of holiday rules loaded from the holiday_calendars / holiday_rules tables. Rules are compiled once per
+// year into a table of per-day flags, so classifying a date is an array lookup.
+public class HolidayCalendar {
+    public static final String DEFAULT_CALENDAR = "default";
+
+    private static final Map<String, HolidayCalendar> calendars = new ConcurrentHashMap<>();
+
+    // Per-day classification flags stored in each year's table
+    private static final byte WEEKEND = 1;
+    private static final byte HOLIDAY = 2;
+
+    // Years inside this window are cached in a flat array, so a lookup needs no hashing or boxing
+    private static final int FIRST_CACHED_YEAR = 1900;
+    private static final int CACHED_YEAR_COUNT = 400;
+
+    private final String name;
+    private final List<HolidayRule> rules;
+    private final AtomicReferenceArray<YearTable> yearTables = new AtomicReferenceArray<>(CACHED_YEAR_COUNT);
+    private final Map<Integer, YearTable> outlyingYearTables = new ConcurrentHashMap<>();
+    private final ChargeDayIndex chargeDayIndex = new ChargeDayIndex(this);
+
+    HolidayCalendar(String name, List<HolidayRuleDao> rules) {
+        this.name = name;
+        this.rules = rules.stream().map(HolidayRule::compile).toList();
+    }
+
+    public static HolidayCalendar forName(String name) {
+        HolidayCalendar calendar = calendars.get(name);
+        if (calendar == null) {
+            calendar = calendars.computeIfAbsent(name, HolidayCalendar::load);
+        }
+        return calendar;
+    }
+
+    private static HolidayCalendar load(String name) {
+        HolidayCalendarRepository repository = Database.getJdbi().onDemand(HolidayCalendarRepository.class);
+        Integer calendarId = repository.findCalendarIdByName(name);
+        if (calendarId == null) {
+            throw new IllegalArgumentException(String.format("Holiday calendar %s could not be found.", name));
+        }
+
+        return new HolidayCalendar(name, repository.getRulesByCalendarId(calendarId));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    ChargeDayIndex getChargeDayIndex() {
+        return chargeDayIndex;
+    }
+
+    public boolean isHoliday(LocalDate date) {
+        return (getDayFlags(date) & HOLIDAY) != 0;
+    }
+
+    // Number of holidays in the inclusive range [start, end]
+    public int countHolidays(LocalDate start, LocalDate end) {
+        return countInRange(start, end, false);
+    }
+
+    // Number of holidays in the inclusive range [start, end] that fall on a Saturday or Sunday
+    public int countWeekendHolidays(LocalDate start, LocalDate end) {
+        return countInRange(start, end, true);
+    }
+
+    private int countInRange(LocalDate start, LocalDate end, boolean weekendOnly) {
+        if (end.isBefore(start)) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int year = start.getYear(); year <= end.getYear(); year++) {
+            YearTable table = getYearTable(year);
+            int from = year == start.getYear() ? start.getDayOfYear() - 1 : 0;
+            int to = year == end.getYear() ? end.getDayOfYear() : table.dayFlags.length;
+            short[] prefix = weekendOnly ? table.weekendHolidaysBefore : table.holidaysBefore;
+            count += prefix[to] - prefix[from];
+        }
+        return count;
+    }
+
+    private byte getDayFlags(LocalDate date) {
+        return getYearTable(date.getYear()).dayFlags[date.getDayOfYear() - 1];
+    }
+
+    private YearTable getYearTable(int year) {
+        int index = year - FIRST_CACHED_YEAR;
+        if (index < 0 || index >= CACHED_YEAR_COUNT) {
+            return outlyingYearTables.computeIfAbsent(year, this::buildYearTable);
+        }
+
+        YearTable table = yearTables.get(index);
+        if (table == null) {
+            // Concurrent builders produce identical tables, so whichever is published first wins
+            yearTables.compareAndSet(index, null, buildYearTable(year));
+            table = yearTables.get(index);
+        }
+        return table;
+    }
+
+    private YearTable buildYearTable(int year) {
+        int length = Year.of(year).length();
+        byte[] dayFlags = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            if (CalendarUtility.isWeekend(LocalDate.ofYearDay(year, i + 1))) {
+                dayFlags[i] |= WEEKEND;
+            }
+        }
+
+        // An observed holiday can shift across a year boundary (e.g. Saturday Jan 1 observed on Dec 31)
+        for (int ruleYear = year - 1; ruleYear <= year + 1; ruleYear++) {
+            for (HolidayRule rule : rules) {
+                rule.apply(ruleYear, year, dayFlags);
+            }
+        }
+
+        return new YearTable(dayFlags);
+    }
+
+    private record YearTable(byte[] dayFlags, short[] holidaysBefore, short[] weekendHolidaysBefore) {
+        // Running counts, where index i covers the first i days of the year
+        private YearTable(byte[] dayFlags) {
+            this(dayFlags, new short[dayFlags.length + 1], new short[dayFlags.length + 1]);
+            for (int i = 0; i < dayFlags.length; i++) {
+                boolean holiday = (dayFlags[i] & HOLIDAY) != 0;
+                holidaysBefore[i + 1] = (short) (holidaysBefore[i] + (holiday ? 1 : 0));
+                weekendHolidaysBefore[i + 1] = (short) (weekendHolidaysBefore[i]
+                        + (holiday && (dayFlags[i] & WEEKEND) != 0 ? 1 : 0));
+            }
+        }
+    }
+
+    private record HolidayRule(String type, Month month, int dayOfMonth, DayOfWeek dayOfWeek, int weekOfMonth,
+                               boolean observeNearestWeekday) {
+        private static HolidayRule compile(HolidayRuleDao dao) {
+            Month month = Month.of(dao.month);
+            return switch (dao.ruleType) {
+                case "FIXED_DATE" -> new HolidayRule(dao.ruleType, month, required(dao, dao.dayOfMonth, "day_of_month"),
+                        null, 0, dao.observeNearestWeekday);
+                case "NTH_WEEKDAY_OF_MONTH" -> new HolidayRule(dao.ruleType, month, 0,
+                        DayOfWeek.of(required(dao, dao.dayOfWeek, "day_of_week")),
+                        required(dao, dao.weekOfMonth, "week_of_month"), false);
+                case "LAST_WEEKDAY_OF_MONTH" -> new HolidayRule(dao.ruleType, month, 0,
+                        DayOfWeek.of(required(dao, dao.dayOfWeek, "day_of_week")), 0, false);
+                default -> throw new IllegalArgumentException(
+                        String.format("Holiday rule %s has unknown type %s.", dao.name, dao.ruleType));
+            };
+        }
+
+        private static int required(HolidayRuleDao dao, Integer value, String column) {
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        String.format("Holiday rule %s of type %s requires %s.", dao.name, dao.ruleType, column));
+            }
+            return value;
+        }
+
+        // Mark this rule's holiday for ruleYear in the flags of tableYear, if it lands there
+        private void apply(int ruleYear, int tableYear, byte[] dayFlags) {
+            LocalDate date = switch (type) {
+                case "FIXED_DATE" -> MonthDay.of(month, dayOfMonth).isValidYear(ruleYear)
+                        ? LocalDate.of(ruleYear, month, dayOfMonth) : null;
+                case "NTH_WEEKDAY_OF_MONTH" -> LocalDate.of(ruleYear, month, 1)
+                        .with(TemporalAdjusters.dayOfWeekInMonth(weekOfMonth, dayOfWeek));
+                default -> LocalDate.of(ruleYear, month, 1).with(TemporalAdjusters.lastInMonth(dayOfWeek));
+            };
+            // Feb 29 in a non-leap year, or a fifth weekday that spills into the next month
+            if (date == null || date.getMonth() != month) {
+                return;
+            }
+
+            LocalDate observedOn = date;
+            if (observeNearestWeekday) {
+                if (date.getDayOfWeek() == DayOfWeek.SATURDAY) observedOn = date.minusDays(1);
+                if (date.getDayOfWeek() == DayOfWeek.SUNDAY) observedOn = date.plusDays(1);
+            }
+            if (observedOn.getYear() == tableYear) {
+                dayFlags[observedOn.getDayOfYear() - 1] |= HOLIDAY;
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.app.services;
+
+import java.time.LocalDate;
+
+// The price of one rental length, as checkout would charge it, without an agreement being saved
+public record Quote(int rentalDays, LocalDate dueDate, int chargeDays, int preDiscountChargeInCents,
+                   int discountAmountInCents, int finalChargeInCents) {
+}
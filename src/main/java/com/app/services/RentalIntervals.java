@@ -0,0 +1,129 @@
+package com.app.services;
+
+import java.util.Arrays;
+
+// The days one tool is rented out, as sorted, non-overlapping [start, end) ranges of epoch days. Overlapping and
+// touching rentals are merged, so every range is separated from the next by at least one free day. Instances are
+// immutable; adding rentals returns a new instance.
+//
+// A max segment tree over the free gaps between ranges lets findNextFree skip every gap too short for the requested
+// length in O(log n), rather than walking the rentals one by one.
+final class RentalIntervals {
+    static final RentalIntervals EMPTY = new RentalIntervals(new int[0], new int[0]);
+
+    private final int[] starts;
+    private final int[] ends;
+    // gapTree[leafOffset + i] is the number of free days after range i; the last range is followed by an open gap
+    private final int[] gapTree;
+    private final int leafOffset;
+
+    private RentalIntervals(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+
+        int leaves = Integer.highestOneBit(Math.max(1, starts.length * 2 - 1));
+        this.leafOffset = leaves;
+        this.gapTree = new int[leaves * 2];
+        for (int i = 0; i < starts.length; i++) {
+            gapTree[leaves + i] = i + 1 < starts.length ? starts[i + 1] - ends[i] : Integer.MAX_VALUE;
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            gapTree[node] = Math.max(gapTree[node * 2], gapTree[node * 2 + 1]);
+        }
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    // Returns a copy that also covers the given ranges, which need not be sorted
+    RentalIntervals withRentals(int[] newStarts, int[] newEnds) {
+        int count = starts.length + newStarts.length;
+        long[] ranges = new long[count];
+        for (int i = 0; i < starts.length; i++) {
+            ranges[i] = pack(starts[i], ends[i]);
+        }
+        for (int i = 0; i < newStarts.length; i++) {
+            ranges[starts.length + i] = pack(newStarts[i], newEnds[i]);
+        }
+        Arrays.sort(ranges);
+
+        int[] mergedStarts = new int[count];
+        int[] mergedEnds = new int[count];
+        int merged = 0;
+        for (long range : ranges) {
+            int start = (int) (range >> 32);
+            int end = (int) range;
+            if (merged > 0 && start <= mergedEnds[merged - 1]) {
+                mergedEnds[merged - 1] = Math.max(mergedEnds[merged - 1], end);
+            } else {
+                mergedStarts[merged] = start;
+                mergedEnds[merged] = end;
+                merged += 1;
+            }
+        }
+        return new RentalIntervals(Arrays.copyOf(mergedStarts, merged), Arrays.copyOf(mergedEnds, merged));
+    }
+
+    // True when no rental covers any day in [from, to)
+    boolean isFree(int from, int to) {
+        int index = lastStartingBefore(to);
+        return index < 0 || ends[index] <= from;
+    }
+
+    // The earliest day on or after from that begins `days` free days in a row
+    int findNextFree(int from, int days) {
+        int index = lastStartingBefore(from + 1);
+        int gapIndex;
+        if (index >= 0 && ends[index] > from) {
+            // from falls inside a rental; the first candidate is the day it ends
+            gapIndex = index;
+        } else if (index + 1 == starts.length || from + days <= starts[index + 1]) {
+            return from;
+        } else {
+            // The gap containing from is too short; the next rental blocks it
+            gapIndex = index + 1;
+        }
+        return ends[firstGapAtLeast(gapIndex, days)];
+    }
+
+    // Index of the last range starting before day, or -1
+    private int lastStartingBefore(int day) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    // First range at or after index whose following gap is at least days long. The last gap is open, so one exists.
+    private int firstGapAtLeast(int index, int days) {
+        int node = leafOffset + index;
+        if (gapTree[node] >= days) {
+            return index;
+        }
+
+        // Climb until a right sibling's subtree holds a long enough gap, then descend to its leftmost such leaf
+        while (true) {
+            if ((node & 1) == 0 && gapTree[node + 1] >= days) {
+                node += 1;
+                break;
+            }
+            node >>= 1;
+        }
+        while (node < leafOffset) {
+            node = gapTree[node * 2] >= days ? node * 2 : node * 2 + 1;
+        }
+        return node - leafOffset;
+    }
+
+    private static long pack(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+}
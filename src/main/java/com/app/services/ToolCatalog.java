@@ -0,0 +1,106 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.ToolDao;
+import com.app.database.dao.ToolTypeChargesDao;
+import com.app.database.repository.ToolRepository;
+import com.app.metrics.Metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Read-through cache of tools together with the charges for their type. Both tables rarely change, so a warm catalog
+// takes the tool and charge lookups off the per-checkout path. Entries are re-read once they are older than
+// catalog.ttl.seconds, or immediately after being invalidated; there is no version check, so an edit to either table
+// is seen only after one of those. Unknown codes are not cached, so a tool added later is found at once.
+public class ToolCatalog {
+    private static final long DEFAULT_TTL_SECONDS = 300;
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final LongAdder hits = Metrics.counter("app_tool_catalog_lookups_total",
+            "Tool catalog lookups, by whether the entry was cached", "result", "hit");
+    private static final LongAdder misses = Metrics.counter("app_tool_catalog_lookups_total",
+            "Tool catalog lookups, by whether the entry was cached", "result", "miss");
+
+    public record Entry(ToolDao tool, ToolTypeChargesDao charges, long expiresAtNanos) {
+    }
+
+    // Returns null when no tool has the given code
+    public static Entry get(String toolCode) {
+        Entry entry = entries.get(toolCode);
+        if (entry != null && !isExpired(entry)) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        entry = load(toolCode);
+        if (entry == null) {
+            entries.remove(toolCode);
+        } else {
+            entries.put(toolCode, entry);
+        }
+        return entry;
+    }
+
+    // Load every tool and charge row in two queries
+    public static void preload() {
+        ToolRepository repository = Database.getJdbi().onDemand(ToolRepository.class);
+        Map<String, ToolTypeChargesDao> chargesByType = repository.getAllChargeDetails().stream()
+                .collect(Collectors.toMap(c -> c.toolType, Function.identity(), (first, second) -> first));
+        List<ToolDao> tools = repository.findAllTools();
+
+        long expiresAt = getExpiry();
+        for (ToolDao tool : tools) {
+            ToolTypeChargesDao charges = chargesByType.get(tool.type);
+            if (charges != null) {
+                entries.put(tool.code, new Entry(tool, charges, expiresAt));
+            }
+        }
+    }
+
+    public static void invalidate(String toolCode) {
+        entries.remove(toolCode);
+    }
+
+    public static void invalidateAll() {
+        entries.clear();
+    }
+
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    private static Entry load(String toolCode) {
+        ToolRepository repository = Database.getJdbi().onDemand(ToolRepository.class);
+        ToolDao tool = repository.findToolByCode(toolCode);
+        if (tool == null) {
+            return null;
+        }
+
+        ToolTypeChargesDao charges = repository.getChargeDetailsByType(tool.type);
+        if (charges == null) {
+            throw new IllegalStateException(String.format("Charges for tool type %s could not be found.", tool.type));
+        }
+        return new Entry(tool, charges, getExpiry());
+    }
+
+    // The TTL is read as entries are loaded rather than once, so a changed catalog.ttl.seconds applies to the next load
+    private static long getExpiry() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                Long.parseLong(Database.getProperty("catalog.ttl.seconds", String.valueOf(DEFAULT_TTL_SECONDS))));
+    }
+
+    private static boolean isExpired(Entry entry) {
+        return System.nanoTime() - entry.expiresAtNanos() >= 0;
+    }
+}
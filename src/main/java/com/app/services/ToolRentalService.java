@@ -5,54 +5,275 @@ import com.app.database.dao.RentalAgreementDao;
 import com.app.database.dao.ToolDao;
 import com.app.database.dao.ToolTypeChargesDao;
 import com.app.database.repository.RentalAgreementRepository;
-import com.app.database.repository.ToolRepository;
+import com.app.metrics.LatencyHistogram;
+import com.app.metrics.Metrics;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.result.ResultIterator;
 
-import java.text.NumberFormat;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class ToolRentalService {
     private static final int MINIMUM_RENTAL_DAYS = 1;
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int MAXIMUM_QUOTE_DAYS = 3650;
+    private static final int DEFAULT_EXPORT_FETCH_SIZE = 1000;
+
+    private static final LatencyHistogram checkoutLatency = Metrics.latency("app_checkout_seconds",
+            "Time to price and save a checkout");
+    private static final LongAdder checkoutFailures = Metrics.counter("app_checkout_failures_total",
+            "Checkouts rejected or failed");
+    private static final LatencyHistogram pricingLatency = Metrics.latency("app_pricing_seconds",
+            "Time to validate and price a rental agreement");
+    private static final LatencyHistogram lookupLatency = Metrics.latency("app_agreement_lookup_seconds",
+            "Time to find a rental agreement by id, from the cache or the agreement store");
+    private static final LatencyHistogram viewLatency = Metrics.latency("app_agreement_view_seconds",
+            "Time to find and format a rental agreement for viewing");
+    private static final LongAdder exportedAgreements = Metrics.counter("app_exported_agreements_total",
+            "Agreements read by exports");
 
     public static String checkout(String toolCode, int rentalDays, int discountPercent, LocalDate checkoutDate) {
-        if (rentalDays < MINIMUM_RENTAL_DAYS) {
-            throw new IllegalArgumentException("Rental day count must be at least 1.");
+        return checkout(toolCode, rentalDays, discountPercent, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR);
+    }
+
+    public static String checkout(String toolCode, int rentalDays, int discountPercent, LocalDate checkoutDate,
+                                  String holidayCalendar) {
+        return formatRentalAgreement(checkoutAgreement(toolCode, rentalDays, discountPercent, checkoutDate,
+                holidayCalendar));
+    }
+
+    // Same as checkout, returning the saved agreement rather than its text
+    public static RentalAgreementDao checkoutAgreement(String toolCode, int rentalDays, int discountPercent,
+                                                       LocalDate checkoutDate, String holidayCalendar) {
+        long started = System.nanoTime();
+        try {
+            return saveCheckout(toolCode, rentalDays, discountPercent, checkoutDate, holidayCalendar);
+        } catch (RuntimeException ex) {
+            checkoutFailures.increment();
+            throw ex;
+        } finally {
+            checkoutLatency.recordSince(started);
         }
+    }
 
-        if (discountPercent < 0 || discountPercent > 100) {
-            throw new IllegalArgumentException("Discount percent must be a number between 0-100.");
+    private static RentalAgreementDao saveCheckout(String toolCode, int rentalDays, int discountPercent,
+                                                   LocalDate checkoutDate, String holidayCalendar) {
+        if (CheckoutEngine.isEnforcingAvailability()) {
+            return CheckoutEngine.checkout(toolCode, rentalDays, discountPercent, checkoutDate, holidayCalendar);
         }
 
-        ToolRepository toolRepository = Database.jdbi.onDemand(ToolRepository.class);
-        ToolDao toolDao = toolRepository.findToolByCode(toolCode);
-        if (toolDao == null) {
-            throw new IllegalArgumentException(String.format("Tool code %s could not be found.", toolCode));
+        RentalAgreementDao agreementDao = priceAgreement(toolCode, rentalDays, discountPercent, checkoutDate,
+                holidayCalendar);
+        if (AgreementWriteBehind.isEnabled()) {
+            AgreementWriteBehind.save(agreementDao);
+        } else {
+            saveAgreement(agreementDao);
         }
 
-        return generateRentalAgreement(toolDao, rentalDays, discountPercent, checkoutDate);
+        return agreementDao;
+    }
+
+    // Prices every rental length from 1 to maxRentalDays for one tool and checkout date, without saving anything. Each
+    // length's charge days come from getChargeDays, the same count a checkout uses, so within the charge day index's
+    // window each further length costs two array reads rather than a separate checkout.
+    public static List<Quote> quote(String toolCode, int maxRentalDays, int discountPercent, LocalDate checkoutDate,
+                                    String holidayCalendar) {
+        if (maxRentalDays < MINIMUM_RENTAL_DAYS || maxRentalDays > MAXIMUM_QUOTE_DAYS) {
+            throw new IllegalArgumentException(String.format("Quotes can cover from %d to %d rental days.",
+                    MINIMUM_RENTAL_DAYS, MAXIMUM_QUOTE_DAYS));
+        }
+        validateDiscountPercent(discountPercent);
+
+        ToolTypeChargesDao charges = getCatalogEntry(toolCode).charges();
+        HolidayCalendar calendar = HolidayCalendar.forName(holidayCalendar);
+
+        List<Quote> quotes = new ArrayList<>(maxRentalDays);
+        for (int rentalDays = 1; rentalDays <= maxRentalDays; rentalDays++) {
+            LocalDate dueDate = getDueDate(checkoutDate, rentalDays);
+            int chargeDays = getChargeDays(charges, calendar, checkoutDate, dueDate);
+            int preDiscountCharge = getPreDiscountChargeInCents(chargeDays, charges.dailyChargeInCents);
+            int discountAmount = getDiscountAmountInCents(preDiscountCharge, discountPercent);
+            quotes.add(new Quote(rentalDays, dueDate, chargeDays, preDiscountCharge, discountAmount,
+                    preDiscountCharge - discountAmount));
+        }
+        return quotes;
+    }
+
+    // Prices and saves every request, committing agreements in chunks of batch.chunk.size per transaction. Requests
+    // are consumed as they are iterated and each agreement is handed to the sink once its chunk commits, so memory
+    // use is bounded by the chunk size. A request that fails is passed to rejects and does not stop the batch. When
+    // availability is enforced, each agreement is checked and saved on its own instead, since requests in one chunk
+    // could overlap each other.
+    public static BatchResult checkoutAll(Iterable<CheckoutRequest> requests, Consumer<RentalAgreementDao> agreements,
+                                          BiConsumer<CheckoutRequest, Exception> rejects) {
+        int chunkSize = Integer.parseInt(Database.getProperty("batch.chunk.size", String.valueOf(DEFAULT_CHUNK_SIZE)));
+        List<CheckoutRequest> chunkRequests = new ArrayList<>(chunkSize);
+        List<RentalAgreementDao> chunk = new ArrayList<>(chunkSize);
+        int accepted = 0;
+
+        for (CheckoutRequest request : requests) {
+            if (CheckoutEngine.isEnforcingAvailability()) {
+                try {
+                    agreements.accept(CheckoutEngine.checkout(request.toolCode(), request.rentalDays(),
+                            request.discountPercent(), request.checkoutDate(), request.holidayCalendar()));
+                    accepted += 1;
+                } catch (RuntimeException ex) {
+                    rejects.accept(request, ex);
+                }
+                continue;
+            }
+
+            try {
+                chunk.add(priceAgreement(request.toolCode(), request.rentalDays(), request.discountPercent(),
+                        request.checkoutDate(), request.holidayCalendar()));
+                chunkRequests.add(request);
+            } catch (RuntimeException ex) {
+                rejects.accept(request, ex);
+                continue;
+            }
+
+            if (chunk.size() == chunkSize) {
+                accepted += saveChunk(chunkRequests, chunk, agreements, rejects);
+                chunkRequests.clear();
+                chunk.clear();
+            }
+        }
+        accepted += saveChunk(chunkRequests, chunk, agreements, rejects);
+
+        return new BatchResult(accepted);
+    }
+
+    // Passes every agreement checked out from one date through another to the sink in checkout date order, only those
+    // for toolCode unless it is null, and returns how many there were. Agreements are read from a forward-only cursor
+    // export.fetch_size rows at a time and handed over as they are read, so memory use does not grow with the number
+    // of agreements. Agreements still queued or journaled are written to the table first.
+    public static int exportAgreements(String toolCode, LocalDate from, LocalDate to,
+                                       Consumer<RentalAgreementDao> agreements) {
+        if (toolCode != null) {
+            getCatalogEntry(toolCode);
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Export end date must not be before the start date.");
+        }
+        int fetchSize = Integer.parseInt(Database.getProperty("export.fetch_size",
+                String.valueOf(DEFAULT_EXPORT_FETCH_SIZE)));
+
+        AgreementWriteBehind.flush();
+        Database.getAgreementStore().flush();
+
+        return Database.getJdbi().withExtension(RentalAgreementRepository.class, repository -> {
+            ResultIterable<RentalAgreementDao> rows = toolCode == null
+                    ? repository.iterateAgreements(from, to, fetchSize)
+                    : repository.iterateAgreementsForTool(toolCode, from, to, fetchSize);
+            int count = 0;
+            try (ResultIterator<RentalAgreementDao> iterator = rows.iterator()) {
+                while (iterator.hasNext()) {
+                    agreements.accept(iterator.next());
+                    count += 1;
+                }
+            } finally {
+                exportedAgreements.add(count);
+            }
+            return count;
+        });
     }
 
     public static String getRentalAgreement(String id) {
-        RentalAgreementRepository repository = Database.jdbi.onDemand(RentalAgreementRepository.class);
-        RentalAgreementDao agreementDao = repository.findAgreementById(id);
+        long started = System.nanoTime();
+        try {
+            RentalAgreementDao agreementDao = findRentalAgreement(id);
+
+            if (agreementDao == null) {
+                throw new IllegalArgumentException(String.format("Rental agreement with id %s could not be found.", id));
+            }
+
+            return formatRentalAgreement(agreementDao);
+        } finally {
+            viewLatency.recordSince(started);
+        }
+    }
+
+    // Returns null when no agreement has the given id, including ids that are not numbers
+    public static RentalAgreementDao findRentalAgreement(String id) {
+        int agreementId;
+        try {
+            agreementId = Integer.parseInt(id.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return findRentalAgreement(agreementId);
+    }
+
+    public static RentalAgreementDao findRentalAgreement(int id) {
+        long started = System.nanoTime();
+        try {
+            return lookUpRentalAgreement(id);
+        } finally {
+            lookupLatency.recordSince(started);
+        }
+    }
 
+    private static RentalAgreementDao lookUpRentalAgreement(int id) {
+        RentalAgreementDao agreementDao = AgreementCache.get(id);
         if (agreementDao == null) {
-            throw new IllegalArgumentException(String.format("Rental agreement with id %s could not be found.", id));
+            agreementDao = AgreementWriteBehind.getQueued(id);
+        }
+        if (agreementDao != null) {
+            return agreementDao;
         }
 
-        return formatRentalAgreement(agreementDao);
+        agreementDao = Database.getAgreementStore().findById(id);
+        if (agreementDao != null) {
+            AgreementCache.put(agreementDao);
+        }
+        return agreementDao;
     }
 
-    private static String generateRentalAgreement(ToolDao tool, int rentalDays, int discountPercent, LocalDate checkoutDate) {
-        ToolRepository toolRepository = Database.jdbi.onDemand(ToolRepository.class);
-        ToolTypeChargesDao charges = toolRepository.getChargeDetailsByType(tool.type);
+    static RentalAgreementDao priceAgreement(String toolCode, int rentalDays, int discountPercent,
+                                             LocalDate checkoutDate, String holidayCalendar) {
+        long started = System.nanoTime();
+        try {
+            if (rentalDays < MINIMUM_RENTAL_DAYS) {
+                throw new IllegalArgumentException("Rental day count must be at least 1.");
+            }
+
+            validateDiscountPercent(discountPercent);
+
+            ToolCatalog.Entry catalogEntry = getCatalogEntry(toolCode);
+
+            HolidayCalendar calendar = HolidayCalendar.forName(holidayCalendar);
+
+            return generateRentalAgreement(catalogEntry.tool(), catalogEntry.charges(), rentalDays, discountPercent,
+                    checkoutDate, calendar);
+        } finally {
+            pricingLatency.recordSince(started);
+        }
+    }
 
+    private static void validateDiscountPercent(int discountPercent) {
+        if (discountPercent < 0 || discountPercent > 100) {
+            throw new IllegalArgumentException("Discount percent must be a number between 0-100.");
+        }
+    }
+
+    private static ToolCatalog.Entry getCatalogEntry(String toolCode) {
+        ToolCatalog.Entry catalogEntry = ToolCatalog.get(toolCode);
+        if (catalogEntry == null) {
+            throw new IllegalArgumentException(String.format("Tool code %s could not be found.", toolCode));
+        }
+        return catalogEntry;
+    }
+
+    private static RentalAgreementDao generateRentalAgreement(ToolDao tool, ToolTypeChargesDao charges, int rentalDays,
+                                                              int discountPercent, LocalDate checkoutDate,
+                                                              HolidayCalendar calendar) {
         LocalDate dueDate = getDueDate(checkoutDate, rentalDays);
-        int chargeDays = getChargeDays(charges, checkoutDate, dueDate);
+        int chargeDays = getChargeDays(charges, calendar, checkoutDate, dueDate);
         int preDiscountCharge = getPreDiscountChargeInCents(chargeDays, charges.dailyChargeInCents);
         int discountAmount = getDiscountAmountInCents(preDiscountCharge, discountPercent);
 
@@ -68,56 +289,89 @@ public class ToolRentalService {
         agreementDao.discountAmountInCents = discountAmount;
         agreementDao.finalChargeInCents = preDiscountCharge - discountAmount;
 
-        RentalAgreementRepository repository = Database.jdbi.onDemand(RentalAgreementRepository.class);
-        agreementDao.id = repository.insert(agreementDao);
+        return agreementDao;
+    }
 
-        return formatRentalAgreement(agreementDao);
+    static void saveAgreement(RentalAgreementDao agreementDao) {
+        Database.getAgreementStore().insert(agreementDao);
+        AgreementCache.put(agreementDao);
+        AvailabilityIndex.add(agreementDao);
     }
 
-    private static String formatRentalAgreement(RentalAgreementDao dao) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yy");
-        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.US);
+    private static void saveAgreements(List<RentalAgreementDao> agreementDaos) {
+        Database.getAgreementStore().insertAll(agreementDaos);
+        for (RentalAgreementDao agreementDao : agreementDaos) {
+            AgreementCache.put(agreementDao);
+        }
+        AvailabilityIndex.addAll(agreementDaos);
+    }
+
+    private static int saveChunk(List<CheckoutRequest> requests, List<RentalAgreementDao> chunk,
+                                 Consumer<RentalAgreementDao> agreements, BiConsumer<CheckoutRequest, Exception> rejects) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            saveAgreements(chunk);
+        } catch (RuntimeException ex) {
+            // Retry row by row so a single bad record only rejects itself
+            int saved = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    saveAgreement(chunk.get(i));
+                    agreements.accept(chunk.get(i));
+                    saved += 1;
+                } catch (RuntimeException rowEx) {
+                    rejects.accept(requests.get(i), rowEx);
+                }
+            }
+            return saved;
+        }
+
+        for (RentalAgreementDao agreementDao : chunk) {
+            agreements.accept(agreementDao);
+        }
+        return chunk.size();
+    }
 
-        return "Id: " + dao.id + "\n" +
-               "Tool code: " + dao.tool.code + "\n" +
-               "Tool type: " + dao.tool.type + "\n" +
-               "Tool brand: " + dao.tool.brand + "\n" +
-               "Rental days: " + dao.rentalDays + "\n" +
-               "Checkout date: " + dao.checkoutDate.format(formatter) + "\n" +
-               "Due date: " + dao.dueDate.format(formatter) + "\n" +
-               "Daily rental charge: " + currencyFormat.format(dao.dailyRentalChargeInCents * 0.01) + "\n" +
-               "Charge days: " + dao.chargeDays + "\n" +
-               "Pre-discount charge: " + currencyFormat.format(dao.preDiscountChargeInCents * 0.01) + "\n" +
-               "Discount percent: " + dao.discountPercent + "%" + "\n" +
-               "Discount amount: " + currencyFormat.format(dao.discountAmountInCents * 0.01) + "\n" +
-               "Final charge: " + currencyFormat.format(dao.finalChargeInCents * 0.01);
+    public static String formatRentalAgreement(RentalAgreementDao dao) {
+        return AgreementRenderer.render(dao, AgreementRenderer.Format.TEXT);
     }
 
     private static LocalDate getDueDate(LocalDate checkoutDate, int rentalDays) {
         return checkoutDate.plusDays(rentalDays);
     }
 
-    private static int getChargeDays(ToolTypeChargesDao charges, LocalDate checkoutDate, LocalDate dueDate) {
-        List<LocalDate> dates = getDatesInRentalPeriod(checkoutDate, dueDate);
+    // Looks the rental up in the calendar's charge day index: the difference of two entries in the running totals of
+    // chargeable days for this tool type's charge flags. Rentals outside the index's window of years
+    // (charge_index.first_year to charge_index.last_year) fall back to countChargeDays.
+    static int getChargeDays(ToolTypeChargesDao charges, HolidayCalendar calendar, LocalDate checkoutDate, LocalDate dueDate) {
+        int chargeDays = calendar.getChargeDayIndex().getChargeDays(ChargeDayIndex.getMask(charges), checkoutDate, dueDate);
+        return chargeDays >= 0 ? chargeDays : countChargeDays(charges, calendar, checkoutDate, dueDate);
+    }
 
-        int chargeDays = 0;
-        for (LocalDate date : dates) {
-            if (CalendarUtility.isHoliday(date)) {
-                if (charges.hasHolidayCharge) chargeDays += 1;
-            } else if (CalendarUtility.isWeekend(date) && charges.hasWeekendCharge) {
-                chargeDays += 1;
-            } else if (CalendarUtility.isWeekday(date) && charges.hasWeekdayCharge) {
-                chargeDays += 1;
-            }
+    // Counts weekdays and weekend days arithmetically, then moves the holidays in the period into their own bucket
+    // using the calendar's per-year running totals, so the cost does not grow with the length of the rental
+    static int countChargeDays(ToolTypeChargesDao charges, HolidayCalendar calendar, LocalDate checkoutDate, LocalDate dueDate) {
+        // Charges start the day after checkout and run through the due date
+        LocalDate firstChargeableDate = checkoutDate.plusDays(1);
+        int totalDays = (int) ChronoUnit.DAYS.between(checkoutDate, dueDate);
+        if (totalDays <= 0) {
+            return 0;
         }
 
-        return chargeDays;
-    }
+        int holidays = calendar.countHolidays(firstChargeableDate, dueDate);
+        int weekendHolidays = calendar.countWeekendHolidays(firstChargeableDate, dueDate);
+        int weekendDays = CalendarUtility.countWeekendDays(firstChargeableDate, dueDate) - weekendHolidays;
+        int weekdays = totalDays - weekendDays - holidays;
 
-    private static List<LocalDate> getDatesInRentalPeriod(LocalDate checkoutDate, LocalDate dueDate) {
-        return Stream.iterate(checkoutDate.plusDays(1), date -> date.plusDays(1))
-                .limit(checkoutDate.until(dueDate).getDays())
-                .collect(Collectors.toList());
+        int chargeDays = 0;
+        if (charges.hasWeekdayCharge) chargeDays += weekdays;
+        if (charges.hasWeekendCharge) chargeDays += weekendDays;
+        if (charges.hasHolidayCharge) chargeDays += holidays;
+
+        return chargeDays;
     }
 
     private static int getPreDiscountChargeInCents(int days, int charge) {
@@ -129,4 +383,10 @@ public class ToolRentalService {
 
         return (int) Math.round(charge * discountAsDecimal);
     }
+
+    // The final charge for chargeDays at the daily charge less the discount, rounded the same way as at checkout
+    static int getFinalChargeInCents(int chargeDays, int dailyChargeInCents, int discountPercent) {
+        int preDiscountCharge = getPreDiscountChargeInCents(chargeDays, dailyChargeInCents);
+        return preDiscountCharge - getDiscountAmountInCents(preDiscountCharge, discountPercent);
+    }
 }
@@ -0,0 +1,10 @@
+package com.app.services;
+
+// The requested tool is already rented for part of the requested period
+public class ToolUnavailableException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public ToolUnavailableException(String message) {
+        super(message);
+    }
+}
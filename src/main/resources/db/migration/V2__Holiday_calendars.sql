@@ -0,0 +1,28 @@
+CREATE TABLE IF NOT EXISTS holiday_calendars (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    name TEXT NOT NULL UNIQUE
+);
+
+-- rule_type determines which columns apply:
+--   FIXED_DATE: month, day_of_month, observe_nearest_weekday (Saturday observed Friday, Sunday observed Monday)
+--   NTH_WEEKDAY_OF_MONTH: month, day_of_week (1 = Monday ... 7 = Sunday), week_of_month (1-5)
+--   LAST_WEEKDAY_OF_MONTH: month, day_of_week
+CREATE TABLE IF NOT EXISTS holiday_rules (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    calendar_id INTEGER NOT NULL,
+    name TEXT NOT NULL,
+    rule_type TEXT NOT NULL CHECK (rule_type IN ('FIXED_DATE', 'NTH_WEEKDAY_OF_MONTH', 'LAST_WEEKDAY_OF_MONTH')),
+    month INTEGER NOT NULL CHECK (month BETWEEN 1 AND 12),
+    day_of_month INTEGER CHECK (day_of_month BETWEEN 1 AND 31),
+    day_of_week INTEGER CHECK (day_of_week BETWEEN 1 AND 7),
+    week_of_month INTEGER CHECK (week_of_month BETWEEN 1 AND 5),
+    observe_nearest_weekday INTEGER NOT NULL DEFAULT 0,
+    FOREIGN KEY (calendar_id) REFERENCES holiday_calendars(id)
+);
+
+INSERT INTO holiday_calendars (name) VALUES ('default');
+
+INSERT INTO holiday_rules (calendar_id, name, rule_type, month, day_of_month, observe_nearest_weekday)
+    SELECT id, 'Independence Day', 'FIXED_DATE', 7, 4, true FROM holiday_calendars WHERE name = 'default';
+INSERT INTO holiday_rules (calendar_id, name, rule_type, month, day_of_week, week_of_month)
+    SELECT id, 'Labor Day', 'NTH_WEEKDAY_OF_MONTH', 9, 1, 1 FROM holiday_calendars WHERE name = 'default';
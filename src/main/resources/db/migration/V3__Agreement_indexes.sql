@@ -0,0 +1,3 @@
+-- Agreements are looked up and joined by tool, and charges by tool type, on every checkout and view
+CREATE INDEX IF NOT EXISTS idx_rental_agreements_tool_id ON rental_agreements (tool_id);
+CREATE INDEX IF NOT EXISTS idx_tool_type_charges_tool_type ON tool_type_charges (tool_type);
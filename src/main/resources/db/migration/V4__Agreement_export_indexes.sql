@@ -0,0 +1,5 @@
+-- Exports read agreements in checkout date order, either all of them or one tool's. The index on tool and checkout
+-- date also serves the availability check and joins by tool, so it replaces the index on tool alone.
+DROP INDEX IF EXISTS idx_rental_agreements_tool_id;
+CREATE INDEX IF NOT EXISTS idx_rental_agreements_tool_id_checkout_date ON rental_agreements (tool_id, checkout_date);
+CREATE INDEX IF NOT EXISTS idx_rental_agreements_checkout_date ON rental_agreements (checkout_date);
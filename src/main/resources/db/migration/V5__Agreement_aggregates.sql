@@ -0,0 +1,72 @@
+-- Running totals of agreements by checkout date and tool type, and by tool, so revenue and utilization dashboards do
+-- not scan rental_agreements. Triggers keep them current inside the transaction that inserts or deletes an agreement.
+-- A row is removed once its last agreement is deleted, so a tool without agreements can still be deleted.
+CREATE TABLE IF NOT EXISTS daily_revenue_by_tool_type (
+    checkout_date INTEGER NOT NULL,
+    tool_type TEXT NOT NULL,
+    agreements INTEGER NOT NULL,
+    rental_days INTEGER NOT NULL,
+    charge_days INTEGER NOT NULL,
+    final_charge_in_cents INTEGER NOT NULL,
+    PRIMARY KEY (checkout_date, tool_type)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS tool_utilization (
+    tool_id INTEGER PRIMARY KEY,
+    agreements INTEGER NOT NULL,
+    rental_days INTEGER NOT NULL,
+    charge_days INTEGER NOT NULL,
+    final_charge_in_cents INTEGER NOT NULL,
+    FOREIGN KEY (tool_id) REFERENCES tools(id)
+);
+
+INSERT INTO daily_revenue_by_tool_type (checkout_date, tool_type, agreements, rental_days, charge_days, final_charge_in_cents)
+SELECT r.checkout_date, t.type, COUNT(*), SUM(r.rental_days), SUM(r.charge_days), SUM(r.final_charge_in_cents)
+FROM rental_agreements r JOIN tools t ON r.tool_id = t.id
+GROUP BY r.checkout_date, t.type;
+
+INSERT INTO tool_utilization (tool_id, agreements, rental_days, charge_days, final_charge_in_cents)
+SELECT tool_id, COUNT(*), SUM(rental_days), SUM(charge_days), SUM(final_charge_in_cents)
+FROM rental_agreements
+GROUP BY tool_id;
+
+CREATE TRIGGER IF NOT EXISTS rental_agreements_aggregates_insert AFTER INSERT ON rental_agreements
+BEGIN
+    INSERT INTO daily_revenue_by_tool_type (checkout_date, tool_type, agreements, rental_days, charge_days, final_charge_in_cents)
+    VALUES (NEW.checkout_date, (SELECT type FROM tools WHERE id = NEW.tool_id), 1, NEW.rental_days, NEW.charge_days,
+            NEW.final_charge_in_cents)
+    ON CONFLICT (checkout_date, tool_type) DO UPDATE SET
+        agreements = agreements + 1,
+        rental_days = rental_days + excluded.rental_days,
+        charge_days = charge_days + excluded.charge_days,
+        final_charge_in_cents = final_charge_in_cents + excluded.final_charge_in_cents;
+
+    INSERT INTO tool_utilization (tool_id, agreements, rental_days, charge_days, final_charge_in_cents)
+    VALUES (NEW.tool_id, 1, NEW.rental_days, NEW.charge_days, NEW.final_charge_in_cents)
+    ON CONFLICT (tool_id) DO UPDATE SET
+        agreements = agreements + 1,
+        rental_days = rental_days + excluded.rental_days,
+        charge_days = charge_days + excluded.charge_days,
+        final_charge_in_cents = final_charge_in_cents + excluded.final_charge_in_cents;
+END;
+
+CREATE TRIGGER IF NOT EXISTS rental_agreements_aggregates_delete AFTER DELETE ON rental_agreements
+BEGIN
+    UPDATE daily_revenue_by_tool_type SET
+        agreements = agreements - 1,
+        rental_days = rental_days - OLD.rental_days,
+        charge_days = charge_days - OLD.charge_days,
+        final_charge_in_cents = final_charge_in_cents - OLD.final_charge_in_cents
+    WHERE checkout_date = OLD.checkout_date AND tool_type = (SELECT type FROM tools WHERE id = OLD.tool_id);
+    DELETE FROM daily_revenue_by_tool_type
+    WHERE checkout_date = OLD.checkout_date AND tool_type = (SELECT type FROM tools WHERE id = OLD.tool_id)
+      AND agreements = 0;
+
+    UPDATE tool_utilization SET
+        agreements = agreements - 1,
+        rental_days = rental_days - OLD.rental_days,
+        charge_days = charge_days - OLD.charge_days,
+        final_charge_in_cents = final_charge_in_cents - OLD.final_charge_in_cents
+    WHERE tool_id = OLD.tool_id;
+    DELETE FROM tool_utilization WHERE tool_id = OLD.tool_id AND agreements = 0;
+END;
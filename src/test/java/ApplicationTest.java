@@ -1,12 +1,22 @@
 import com.app.Application;
+import com.app.database.AgreementAggregates;
 import com.app.database.Database;
+import com.app.services.AgreementCache;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -307,6 +317,18 @@ public class ApplicationTest {
         assertEquals(agreementFromCheckout, agreementFromView);
     }
 
+    @DisplayName("Should view a newly created agreement from the agreement cache")
+    @Test
+    void shouldViewNewAgreementFromCache() {
+        String id = checkout("LADW", "7/2/20", "3", "10");
+        long hitsBeforeView = AgreementCache.getHitCount();
+
+        viewAgreement(id);
+
+        assertEquals(hitsBeforeView + 1, AgreementCache.getHitCount());
+        assertTrue(outContent.toString().contains("Id: " + id));
+    }
+
     @DisplayName("Should error when agreement cannot be found")
     @Test
     void shouldGenerateErrorWhenRentalAgreementCannotBeFound() {
@@ -318,6 +340,164 @@ public class ApplicationTest {
         assertTrue(errContent.toString().contains(errorMessage));
     }
 
+    @DisplayName("Should check out valid batch records and reject invalid ones without stopping")
+    @Test
+    void shouldCheckoutBatchAndRecordRejects(@TempDir Path directory) throws IOException {
+        Path input = directory.resolve("rentals.csv");
+        Path rejects = directory.resolve("rejects.txt");
+        Files.write(input, List.of(
+                "tool_code,rental_days,discount_percent,checkout_date",
+                "JAKD,6,0,9/3/15",
+                "INVALID_TOOL_CODE,1,10,9/3/15",
+                "LADW,3,10,7/2/20",
+                "CHNS,5,25,not_a_date"));
+
+        int statusCode = Application.runApplication(new String[]{"-b", input.toString(), "-rj", rejects.toString()});
+        assertEquals(0, statusCode);
+
+        verifyRentalAgreementCount(2);
+        assertTrue(outContent.toString().contains("Tool code: JAKD"));
+        assertTrue(outContent.toString().contains("Tool code: LADW"));
+
+        List<String> rejectedLines = Files.readAllLines(rejects);
+        assertEquals(2, rejectedLines.size());
+        assertTrue(rejectedLines.get(0).startsWith("line 3\tTool code INVALID_TOOL_CODE could not be found."));
+        assertTrue(rejectedLines.get(1).startsWith("line 5\t"));
+    }
+
+    @DisplayName("Should treat only the exact column names as a CSV header and keep a record's holiday calendar in rejects")
+    @Test
+    void shouldReadHeaderlessBatchWithHolidayCalendars(@TempDir Path directory) throws IOException {
+        Path input = directory.resolve("rentals.csv");
+        Path rejects = directory.resolve("rejects.txt");
+        Files.write(input, List.of(
+                "TOOL,2,0,9/3/15",
+                "JAKD,6,0,9/3/15,default",
+                "LADW,3,10,7/2/20,no_such_calendar"));
+
+        assertEquals(0, Application.runApplication(new String[]{"-b", input.toString(), "-rj", rejects.toString()}));
+
+        verifyRentalAgreementCount(1);
+        List<String> rejectedLines = Files.readAllLines(rejects);
+        assertEquals(2, rejectedLines.size());
+        assertTrue(rejectedLines.get(0).startsWith("line 1\tTool code TOOL could not be found."));
+        assertTrue(rejectedLines.get(1).startsWith("line 3\tHoliday calendar no_such_calendar could not be found."));
+        assertTrue(rejectedLines.get(1).endsWith("\tLADW,3,10,7/2/2020,no_such_calendar"));
+        assertTrue(errContent.toString().contains("1 agreements created, 2 rejected"));
+    }
+
+    @DisplayName("Should export agreements in a checkout date range in date order, optionally for one tool")
+    @Test
+    void shouldExportAgreementsInDateRange(@TempDir Path directory) throws IOException {
+        assertEquals(0, Application.runApplication(getCheckoutArgs("LADW", "3", "10", "7/2/20")));
+        assertEquals(0, Application.runApplication(getCheckoutArgs("JAKD", "6", "0", "9/3/15")));
+        assertEquals(0, Application.runApplication(getCheckoutArgs("JAKD", "4", "0", "12/31/15")));
+        assertEquals(0, Application.runApplication(getCheckoutArgs("JAKR", "5", "0", "1/1/16")));
+
+        Path csv = directory.resolve("export.csv");
+        assertEquals(0, Application.runApplication(new String[]{"-e", "-fd", "1/1/15", "-td", "12/31/15",
+                "-tc", "JAKD", "-o", csv.toString()}));
+        List<String> rows = Files.readAllLines(csv);
+        assertEquals(3, rows.size());
+        assertEquals("id,tool_code,tool_type,tool_brand,rental_days,checkout_date,due_date," +
+                "daily_rental_charge_in_cents,charge_days,prediscount_charge_in_cents,discount_percent," +
+                "discount_amount_in_cents,final_charge_in_cents", rows.get(0));
+        assertTrue(rows.get(1).matches("\\d+,JAKD,Jackhammer,DeWalt,6,2015-09-03,2015-09-09,299,3,897,0,0,897"));
+        assertTrue(rows.get(2).contains(",JAKD,Jackhammer,DeWalt,4,2015-12-31,"));
+
+        outContent.reset();
+        assertEquals(0, Application.runApplication(new String[]{"--export", "--from", "9/3/15", "--to", "7/2/20",
+                "--format", "jsonl"}));
+        List<String> lines = outContent.toString().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).contains("\"checkoutDate\":\"2015-09-03\""));
+        assertTrue(lines.get(1).contains("\"checkoutDate\":\"2015-12-31\""));
+        assertTrue(lines.get(2).contains("\"toolCode\":\"JAKR\""));
+        assertTrue(lines.get(3).contains("\"toolCode\":\"LADW\""));
+        assertTrue(errContent.toString().contains("Export complete: 4 agreements written"));
+    }
+
+    @DisplayName("Should rebuild revenue and utilization totals that have drifted from the agreements")
+    @Test
+    void shouldRebuildAggregates() throws SQLException {
+        assertEquals(0, Application.runApplication(getCheckoutArgs("JAKD", "6", "0", "9/3/15")));
+        assertEquals(0, Application.runApplication(getCheckoutArgs("JAKD", "4", "0", "12/31/15")));
+        try (Statement stmt = Database.getConnection().createStatement()) {
+            stmt.executeUpdate("UPDATE tool_utilization SET agreements = 99");
+            stmt.executeUpdate("DELETE FROM daily_revenue_by_tool_type");
+        }
+        AgreementAggregates.invalidate();
+
+        assertEquals(0, Application.runApplication(new String[]{"--rebuild-aggregates"}));
+
+        assertTrue(errContent.toString().contains("Rebuilt aggregates from 2 agreements"));
+        assertEquals(2, AgreementAggregates.getUtilizationByTool().get("JAKD").agreements());
+        assertEquals(2, AgreementAggregates.getRevenueByToolType(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 12, 31))
+                .get("Jackhammer").agreements());
+    }
+
+    @DisplayName("Should reprice agreements with the rates in a CSV file, skipping its header and reading 1 and 0 as flags")
+    @Test
+    void shouldRepriceWithRatesFile(@TempDir Path directory) throws IOException {
+        assertEquals(0, Application.runApplication(getCheckoutArgs("LADW", "3", "10", "7/2/20")));
+        assertEquals(0, Application.runApplication(getCheckoutArgs("JAKD", "6", "0", "9/3/15")));
+        Path rates = directory.resolve("rates.csv");
+        Files.write(rates, List.of("tool_type,daily_charge_in_cents,weekday_charge,weekend_charge,holiday_charge", "",
+                " Ladder , 249 , TRUE , 1 , 0 "));
+
+        assertEquals(0, Application.runApplication(new String[]{"--reprice", rates.toString(), "--from", "1/1/15",
+                "--to", "12/31/20"}));
+
+        List<String> rows = outContent.toString().lines().toList();
+        assertTrue(rows.stream().anyMatch(row ->
+                row.matches("Jackhammer\\s+1\\s+3\\s+3\\s+\\$8\\.97\\s+\\$8\\.97\\s+\\$0\\.00")), rows.toString());
+        assertTrue(rows.stream().anyMatch(row ->
+                row.matches("Ladder\\s+1\\s+2\\s+2\\s+\\$3\\.58\\s+\\$4\\.48\\s+\\$0\\.90")), rows.toString());
+        assertTrue(errContent.toString().contains("Repriced 2 agreements"));
+        verifyRentalAgreementCount(2);
+    }
+
+    @DisplayName("Should reject a rates file line without 5 fields or with a flag that is not true or false")
+    @Test
+    void shouldRejectInvalidRatesFile(@TempDir Path directory) throws IOException {
+        Path shortLine = directory.resolve("short.csv");
+        Files.write(shortLine, List.of("Ladder,249,true,true,false", "Chainsaw,149,true,false"));
+        assertEquals(1, Application.runApplication(new String[]{"-rp", shortLine.toString(), "-fd", "1/1/15",
+                "-td", "12/31/15"}));
+        assertTrue(errContent.toString().contains("Line 2 of " + shortLine + " must have 5 fields"));
+
+        Path badFlag = directory.resolve("flag.csv");
+        Files.write(badFlag, List.of("Ladder,249,yes,true,false"));
+        assertEquals(1, Application.runApplication(new String[]{"-rp", badFlag.toString(), "-fd", "1/1/15",
+                "-td", "12/31/15"}));
+        assertTrue(errContent.toString().contains("Line 1 of " + badFlag + ": yes is not true or false."));
+
+        outContent.reset();
+        assertEquals(0, Application.runApplication(new String[]{"-rp", badFlag.toString(), "-fd", "1/1/15"}));
+        assertTrue(outContent.toString().startsWith("Missing required options for reprice."));
+    }
+
+    @DisplayName("Should write Prometheus metrics covering the checkout and its repository calls on exit")
+    @Test
+    void shouldWriteMetricsOnExit(@TempDir Path directory) throws IOException {
+        Path metrics = directory.resolve("metrics.prom");
+        String[] checkoutArgs = getCheckoutArgs("JAKD", "6", "0", "9/3/15");
+        String[] args = new String[checkoutArgs.length + 2];
+        System.arraycopy(checkoutArgs, 0, args, 0, checkoutArgs.length);
+        args[checkoutArgs.length] = "-m";
+        args[checkoutArgs.length + 1] = metrics.toString();
+
+        assertEquals(0, Application.runApplication(args));
+
+        String text = Files.readString(metrics);
+        assertTrue(text.contains("# TYPE app_checkout_seconds summary"));
+        assertTrue(text.contains("app_checkout_seconds{quantile=\"0.99\"} "));
+        assertTrue(text.matches("(?s).*\napp_checkout_seconds_count [1-9][0-9]*\n.*"));
+        assertTrue(text.contains("app_pricing_seconds_count "));
+        assertTrue(text.contains("app_repository_call_seconds_count{repository=\"RentalAgreementRepository\",method=\"insert\"} "));
+        assertTrue(text.contains("app_sql_statement_seconds_count{repository=\"RentalAgreementRepository\",method=\"insert\"} "));
+    }
+
     private static String checkout(String code, String date, String days, String discount) {
         String[] checkoutArgs = getCheckoutArgs(code, days, discount, date);
 
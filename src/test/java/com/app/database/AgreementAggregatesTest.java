@@ -0,0 +1,154 @@
+package com.app.database;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.services.CheckoutRequest;
+import com.app.services.HolidayCalendar;
+import com.app.services.ToolRentalService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static utilities.TestUtilities.deleteAllRentalAgreements;
+
+public class AgreementAggregatesTest {
+    private static final LocalDate CHECKOUT_DATE = LocalDate.of(2015, 9, 3);
+    private static final String HOLIDAY_CALENDAR = HolidayCalendar.DEFAULT_CALENDAR;
+    private static final String[] TOOL_CODES = {"CHNS", "LADW", "JAKD", "JAKR"};
+
+    @AfterEach
+    void reset() {
+        Database.closeConnection();
+        System.clearProperty("agreement.store");
+        deleteAllRentalAgreements();
+        new File("test.journal").delete();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should keep the aggregate tables and in-memory totals equal to a full scan as agreements are saved")
+    @Test
+    void shouldMatchFullScanAfterCheckouts() {
+        // Loaded before the checkouts, so they are recorded as they are saved
+        assertTrue(AgreementAggregates.getUtilizationByTool().isEmpty());
+
+        checkOut(40);
+        List<CheckoutRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            batch.add(new CheckoutRequest("line " + i, TOOL_CODES[i % 4], 1 + i % 9, i % 3 * 10,
+                    CHECKOUT_DATE.plusDays(i % 11), HOLIDAY_CALENDAR));
+        }
+        ToolRentalService.checkoutAll(batch, agreement -> {
+        }, (request, ex) -> {
+            throw new AssertionError(ex);
+        });
+
+        assertMatchesFullScan();
+
+        // Reading the tables again gives the same totals
+        AgreementAggregates.invalidate();
+        assertMatchesFullScan();
+    }
+
+    @DisplayName("Should count journaled agreements once they are copied into the table, and only once")
+    @Test
+    void shouldCountJournaledAgreementsOnCompaction() {
+        System.setProperty("agreement.store", "journal");
+        System.setProperty("agreement.journal.path", "test.journal");
+        try {
+            AgreementAggregates.getUtilizationByTool();
+            List<RentalAgreementDao> agreements = checkOut(20);
+            assertTrue(AgreementAggregates.getUtilizationByTool().isEmpty());
+
+            Database.getAgreementStore().flush();
+            // Copying agreements that are already in the table again changes nothing
+            ((JournalAgreementStore) Database.getAgreementStore()).compact();
+            new SqliteAgreementStore().insertAllIgnoringExisting(agreements);
+
+            assertMatchesFullScan();
+        } finally {
+            System.clearProperty("agreement.journal.path");
+        }
+    }
+
+    @DisplayName("Should rebuild aggregate tables that have drifted from the agreements, summing ranges in parallel")
+    @Test
+    void shouldRebuildFromAgreements() throws SQLException {
+        checkOut(60);
+        try (Statement stmt = Database.getConnection().createStatement()) {
+            stmt.executeUpdate("DELETE FROM daily_revenue_by_tool_type WHERE tool_type = 'Ladder'");
+            stmt.executeUpdate("UPDATE tool_utilization SET agreements = agreements + 5, final_charge_in_cents = 0");
+        }
+        AgreementAggregates.invalidate();
+
+        AgreementAggregates.RebuildResult result = AgreementAggregates.rebuild(3);
+
+        assertEquals(60, result.agreements());
+        assertMatchesFullScan();
+        AgreementAggregates.invalidate();
+        assertMatchesFullScan();
+    }
+
+    private static List<RentalAgreementDao> checkOut(int count) {
+        List<RentalAgreementDao> agreements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            agreements.add(ToolRentalService.checkoutAgreement(TOOL_CODES[i % 4], 1 + i % 7, i % 5 * 5,
+                    CHECKOUT_DATE.plusDays(i % 13), HOLIDAY_CALENDAR));
+        }
+        return agreements;
+    }
+
+    private static void assertMatchesFullScan() {
+        LocalDate from = CHECKOUT_DATE.minusDays(1);
+        LocalDate to = CHECKOUT_DATE.plusDays(20);
+        Map<String, AgreementAggregates.Totals> byType = scan("SELECT t.type, COUNT(*), SUM(r.rental_days), " +
+                "SUM(r.charge_days), SUM(r.final_charge_in_cents) FROM rental_agreements r JOIN tools t " +
+                "ON r.tool_id = t.id GROUP BY t.type");
+        Map<String, AgreementAggregates.Totals> byTool = scan("SELECT t.code, COUNT(*), SUM(r.rental_days), " +
+                "SUM(r.charge_days), SUM(r.final_charge_in_cents) FROM rental_agreements r JOIN tools t " +
+                "ON r.tool_id = t.id GROUP BY t.code");
+
+        assertEquals(byType, AgreementAggregates.getRevenueByToolType(from, to));
+        assertEquals(byTool, AgreementAggregates.getUtilizationByTool());
+        assertEquals(byType, scan("SELECT tool_type, SUM(agreements), SUM(rental_days), SUM(charge_days), " +
+                "SUM(final_charge_in_cents) FROM daily_revenue_by_tool_type GROUP BY tool_type"));
+        assertEquals(byTool, scan("SELECT t.code, u.agreements, u.rental_days, u.charge_days, " +
+                "u.final_charge_in_cents FROM tool_utilization u JOIN tools t ON u.tool_id = t.id"));
+
+        for (int i = 0; i < 13; i++) {
+            LocalDate day = CHECKOUT_DATE.plusDays(i);
+            assertEquals(AgreementAggregates.getRevenueByToolType(day, day).getOrDefault("Jackhammer",
+                    AgreementAggregates.Totals.EMPTY), AgreementAggregates.getDailyRevenue("Jackhammer", day));
+        }
+    }
+
+    private static Map<String, AgreementAggregates.Totals> scan(String sql) {
+        Map<String, AgreementAggregates.Totals> totals = new TreeMap<>();
+        try (Statement stmt = Database.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                totals.put(rs.getString(1), new AgreementAggregates.Totals(rs.getLong(2), rs.getLong(3),
+                        rs.getLong(4), rs.getLong(5)));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return totals;
+    }
+}
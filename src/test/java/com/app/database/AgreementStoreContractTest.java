@@ -0,0 +1,188 @@
+package com.app.database;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.RentalPeriodDao;
+import com.app.database.dao.ToolDao;
+import com.app.database.repository.ToolRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static utilities.TestUtilities.deleteAllRentalAgreements;
+import static utilities.TestUtilities.verifyRentalAgreementCount;
+
+// Behaviour every AgreementStore must share. Each backend's test class extends this and supplies the store.
+public abstract class AgreementStoreContractTest {
+    private static final LocalDate CHECKOUT_DATE = LocalDate.of(2015, 9, 3);
+
+    protected AgreementStore store;
+
+    protected abstract AgreementStore openStore();
+
+    @BeforeEach
+    void open() {
+        store = openStore();
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+        deleteAllRentalAgreements();
+    }
+
+    @DisplayName("Should assign unique ids and read back every field of a saved agreement")
+    @Test
+    void shouldReadBackSavedAgreements() {
+        Set<Integer> ids = new HashSet<>();
+        List<RentalAgreementDao> saved = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            RentalAgreementDao agreement = agreement("LADW", CHECKOUT_DATE.plusDays(i * 7L), 1 + i % 6);
+            int id = store.insert(agreement);
+
+            assertEquals(id, agreement.id);
+            assertTrue(ids.add(id), "Duplicate id " + id);
+            saved.add(agreement);
+        }
+
+        for (RentalAgreementDao agreement : saved) {
+            assertSameAgreement(agreement, store.findById(agreement.id));
+        }
+    }
+
+    @DisplayName("Should save agreements together and return their ids in order")
+    @Test
+    void shouldInsertAllInOrder() {
+        List<RentalAgreementDao> agreements = List.of(agreement("CHNS", CHECKOUT_DATE, 3),
+                agreement("JAKD", CHECKOUT_DATE, 4), agreement("JAKR", CHECKOUT_DATE, 5));
+
+        int[] ids = store.insertAll(agreements);
+
+        assertArrayEquals(agreements.stream().mapToInt(a -> a.id).toArray(), ids);
+        assertEquals(3, new HashSet<>(List.of(ids[0], ids[1], ids[2])).size());
+        for (RentalAgreementDao agreement : agreements) {
+            assertSameAgreement(agreement, store.findById(agreement.id));
+        }
+        assertArrayEquals(new int[0], store.insertAll(List.of()));
+    }
+
+    @DisplayName("Should return null for an id that was never saved")
+    @Test
+    void shouldNotFindUnknownId() {
+        int id = store.insert(agreement("JAKD", CHECKOUT_DATE, 2));
+
+        assertNull(store.findById(id + 100_000));
+    }
+
+    @DisplayName("Should report overlapping rentals of the same tool only")
+    @Test
+    void shouldDetectOverlaps() {
+        RentalAgreementDao agreement = agreement("LADW", CHECKOUT_DATE, 5);
+        store.insert(agreement);
+        int toolId = agreement.tool.id;
+        LocalDate dueDate = agreement.dueDate;
+
+        assertTrue(store.hasOverlappingAgreement(toolId, CHECKOUT_DATE.minusDays(2), CHECKOUT_DATE.plusDays(1)));
+        assertTrue(store.hasOverlappingAgreement(toolId, dueDate.minusDays(1), dueDate.plusDays(3)));
+        assertFalse(store.hasOverlappingAgreement(toolId, dueDate, dueDate.plusDays(3)));
+        assertFalse(store.hasOverlappingAgreement(toolId, CHECKOUT_DATE.minusDays(3), CHECKOUT_DATE));
+        assertFalse(store.hasOverlappingAgreement(tool("CHNS").id, CHECKOUT_DATE, dueDate));
+    }
+
+    @DisplayName("Should list the rental period of every saved agreement")
+    @Test
+    void shouldListRentalPeriods() {
+        store.insert(agreement("LADW", CHECKOUT_DATE, 5));
+        store.insertAll(List.of(agreement("CHNS", CHECKOUT_DATE.plusDays(10), 2),
+                agreement("CHNS", CHECKOUT_DATE.plusDays(20), 3)));
+
+        Set<String> periods = new HashSet<>();
+        store.forEachRentalPeriod((RentalPeriodDao period) ->
+                periods.add(period.toolCode + " " + period.checkoutDate + " " + period.dueDate));
+
+        assertEquals(Set.of("LADW 2015-09-03 2015-09-08", "CHNS 2015-09-13 2015-09-15", "CHNS 2015-09-23 2015-09-26"),
+                periods);
+    }
+
+    @DisplayName("Should keep saved agreements and hand out fresh ids after being closed and reopened")
+    @Test
+    void shouldSurviveReopening() {
+        RentalAgreementDao first = agreement("JAKR", CHECKOUT_DATE, 4);
+        store.insert(first);
+
+        store.close();
+        store = openStore();
+        RentalAgreementDao second = agreement("JAKR", CHECKOUT_DATE.plusDays(4), 4);
+        store.insert(second);
+
+        assertTrue(second.id != first.id);
+        assertSameAgreement(first, store.findById(first.id));
+        assertSameAgreement(second, store.findById(second.id));
+    }
+
+    @DisplayName("Should have every saved agreement in rental_agreements once flushed")
+    @Test
+    void shouldWriteSavedAgreementsToTableOnFlush() {
+        List<RentalAgreementDao> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            RentalAgreementDao agreement = agreement("CHNS", CHECKOUT_DATE.plusDays(i * 3L), 2);
+            store.insert(agreement);
+            saved.add(agreement);
+        }
+
+        store.flush();
+
+        verifyRentalAgreementCount(saved.size());
+        SqliteAgreementStore table = new SqliteAgreementStore();
+        for (RentalAgreementDao agreement : saved) {
+            assertSameAgreement(agreement, table.findById(agreement.id));
+        }
+    }
+
+    protected static RentalAgreementDao agreement(String toolCode, LocalDate checkoutDate, int rentalDays) {
+        RentalAgreementDao agreement = new RentalAgreementDao();
+        agreement.tool = tool(toolCode);
+        agreement.rentalDays = rentalDays;
+        agreement.checkoutDate = checkoutDate;
+        agreement.dueDate = checkoutDate.plusDays(rentalDays);
+        agreement.dailyRentalChargeInCents = 199;
+        agreement.chargeDays = rentalDays - 1;
+        agreement.preDiscountChargeInCents = 199 * (rentalDays - 1);
+        agreement.discountPercent = 10;
+        agreement.discountAmountInCents = Math.round(agreement.preDiscountChargeInCents * 0.1f);
+        agreement.finalChargeInCents = agreement.preDiscountChargeInCents - agreement.discountAmountInCents;
+        return agreement;
+    }
+
+    protected static ToolDao tool(String toolCode) {
+        return Database.getJdbi().onDemand(ToolRepository.class).findToolByCode(toolCode);
+    }
+
+    protected static void assertSameAgreement(RentalAgreementDao expected, RentalAgreementDao actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.tool.id, actual.tool.id);
+        assertEquals(expected.tool.code, actual.tool.code);
+        assertEquals(expected.tool.type, actual.tool.type);
+        assertEquals(expected.tool.brand, actual.tool.brand);
+        assertEquals(expected.rentalDays, actual.rentalDays);
+        assertEquals(expected.checkoutDate, actual.checkoutDate);
+        assertEquals(expected.dueDate, actual.dueDate);
+        assertEquals(expected.dailyRentalChargeInCents, actual.dailyRentalChargeInCents);
+        assertEquals(expected.chargeDays, actual.chargeDays);
+        assertEquals(expected.preDiscountChargeInCents, actual.preDiscountChargeInCents);
+        assertEquals(expected.discountPercent, actual.discountPercent);
+        assertEquals(expected.discountAmountInCents, actual.discountAmountInCents);
+        assertEquals(expected.finalChargeInCents, actual.finalChargeInCents);
+    }
+}
@@ -0,0 +1,144 @@
+package com.app.database;
+
+import com.app.metrics.Metrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionPoolTest {
+    private static final LongAdder timeouts = Metrics.counter("app_db_pool_timeouts_total",
+            "Reads that gave up waiting for a pooled connection");
+
+    @TempDir
+    Path directory;
+    private final AtomicInteger opened = new AtomicInteger();
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void openPool() {
+        pool = new ConnectionPool(countingDataSource(), 2, 100);
+    }
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @DisplayName("Should open at most maxSize connections and time out a borrower once all are in use")
+    @Test
+    void shouldTimeOutBeyondMaxSize() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        long timeoutsBefore = timeouts.sum();
+
+        SQLException ex = assertThrows(SQLException.class, pool::getConnection);
+
+        assertTrue(ex.getMessage().startsWith("Timed out after 100 ms"));
+        assertEquals(timeoutsBefore + 1, timeouts.sum());
+        assertEquals(2, opened.get());
+        first.close();
+        second.close();
+    }
+
+    @DisplayName("Should take a connection back on close, once however often it is closed, and reuse it")
+    @Test
+    void shouldReuseReturnedConnections() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+
+        first.close();
+        first.close();
+
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::createStatement);
+        Connection reused = pool.getConnection();
+        assertFalse(reused.isClosed());
+        // The second close did not hand the same connection back twice
+        assertThrows(SQLException.class, pool::getConnection);
+        assertEquals(2, opened.get());
+        reused.close();
+        second.close();
+    }
+
+    @DisplayName("Should hand a waiting borrower the connection another thread returns")
+    @Test
+    void shouldWakeWaitingBorrower() throws Exception {
+        pool = new ConnectionPool(countingDataSource(), 1, 10_000);
+        Connection held = pool.getConnection();
+
+        CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        held.close();
+        Connection handedOver = waiting.get(5, TimeUnit.SECONDS);
+        assertFalse(handedOver.isClosed());
+        assertEquals(1, opened.get());
+        handedOver.close();
+    }
+
+    @DisplayName("Should roll back a transaction left open by the borrower before lending the connection again")
+    @Test
+    void shouldRollBackOnReturn() throws SQLException {
+        pool = new ConnectionPool(countingDataSource(), 1, 100);
+        try (Connection connection = pool.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE items (id INTEGER PRIMARY KEY)");
+            connection.setAutoCommit(false);
+            stmt.executeUpdate("INSERT INTO items (id) VALUES (1)");
+        }
+
+        try (Connection connection = pool.getConnection(); Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM items")) {
+            assertTrue(connection.getAutoCommit());
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @DisplayName("Should refuse new borrowers once closed")
+    @Test
+    void shouldRejectBorrowersWhenClosed() {
+        pool.close();
+
+        assertThrows(SQLException.class, pool::getConnection);
+    }
+
+    // Counts the connections the pool opens from the underlying data source
+    private DataSource countingDataSource() {
+        SQLiteDataSource sqlite = new SQLiteDataSource();
+        sqlite.setUrl("jdbc:sqlite:" + directory.resolve("pool.db"));
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        opened.incrementAndGet();
+                    }
+                    return method.invoke(sqlite, args);
+                });
+    }
+}
@@ -0,0 +1,97 @@
+package com.app.database;
+
+import org.jdbi.v3.core.Handle;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DatabaseWriterTest {
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should run writes one at a time on the writer thread, each caller's in the order it made them")
+    @Test
+    void shouldSerializeWrites() throws Exception {
+        int callers = 8;
+        int writesPerCaller = 50;
+        List<int[]> order = new ArrayList<>();
+        int[] running = new int[1];
+        int[] maxRunning = new int[1];
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(callers)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int caller = 0; caller < callers; caller++) {
+                int id = caller;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < writesPerCaller; i++) {
+                        int sequence = i;
+                        Database.write(handle -> {
+                            // Unsynchronized on purpose: only one write may be running at a time
+                            running[0] += 1;
+                            maxRunning[0] = Math.max(maxRunning[0], running[0]);
+                            assertEquals("database-writer", Thread.currentThread().getName());
+                            order.add(new int[]{id, sequence});
+                            running[0] -= 1;
+                            return null;
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        int[] next = new int[callers];
+        Database.write(handle -> {
+            assertEquals(1, maxRunning[0]);
+            assertEquals(callers * writesPerCaller, order.size());
+            for (int[] write : order) {
+                assertEquals(next[write[0]]++, write[1]);
+            }
+            return null;
+        });
+    }
+
+    @DisplayName("Should run a write made from inside another write straight away, on the same handle")
+    @Test
+    void shouldRunNestedWritesInline() {
+        Handle[] handles = new Handle[2];
+
+        int result = Database.write(outer -> {
+            handles[0] = outer;
+            return Database.write(inner -> {
+                handles[1] = inner;
+                return 42;
+            });
+        });
+
+        assertEquals(42, result);
+        assertSame(handles[0], handles[1]);
+    }
+
+    @DisplayName("Should rethrow a failed write's exception to its caller and keep serving later writes")
+    @Test
+    void shouldPropagateFailures() {
+        IllegalStateException failure = new IllegalStateException("Write failed");
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> Database.write(handle -> {
+            throw failure;
+        })));
+        assertEquals(1, (int) Database.write(handle -> handle.createQuery("SELECT 1").mapTo(Integer.class).one()));
+    }
+}
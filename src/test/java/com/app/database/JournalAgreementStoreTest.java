@@ -0,0 +1,233 @@
+package com.app.database;
+
+import com.app.database.dao.RentalAgreementDao;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static utilities.TestUtilities.verifyRentalAgreementCount;
+
+public class JournalAgreementStoreTest extends AgreementStoreContractTest {
+    private static final Path JOURNAL = Path.of("test.journal");
+    private static final int HEADER_BYTES = 16;
+    private static final LocalDate CHECKOUT_DATE = LocalDate.of(2020, 7, 2);
+
+    @AfterEach
+    void deleteJournal() {
+        JOURNAL.toFile().delete();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @Override
+    protected AgreementStore openStore() {
+        return openJournal(1000);
+    }
+
+    // A crash is simulated by opening the journal again while an earlier store is still open on it. The earlier store
+    // is abandoned rather than closed, since closing would copy its agreements into the table.
+
+    @DisplayName("Should recover journaled agreements that were never copied into the table")
+    @Test
+    void shouldRecoverAfterCrash() {
+        JournalAgreementStore before = openJournal(1000);
+        List<RentalAgreementDao> saved = insert(before, 10);
+
+        JournalAgreementStore after = openJournal(1000);
+        store = after;
+
+        verifyRentalAgreementCount(0);
+        assertEquals(10, after.getJournaledCount());
+        for (RentalAgreementDao agreement : saved) {
+            assertSameAgreement(agreement, after.findById(agreement.id));
+        }
+    }
+
+    @DisplayName("Should stop recovery at a record whose checksum does not match and reuse its space")
+    @Test
+    void shouldDiscardTornRecord() throws IOException {
+        JournalAgreementStore before = openJournal(1000);
+        List<RentalAgreementDao> saved = insert(before, 5);
+        corruptRecord(3);
+
+        JournalAgreementStore recovered = openJournal(1000);
+        assertEquals(3, recovered.getJournaledCount());
+        assertNull(recovered.findById(saved.get(3).id));
+        assertNull(recovered.findById(saved.get(4).id));
+
+        // The next save takes the torn record's place, and the record after it is not read back
+        RentalAgreementDao replacement = insert(recovered, 1).get(0);
+        JournalAgreementStore reopened = openJournal(1000);
+        store = reopened;
+        assertEquals(4, reopened.getJournaledCount());
+        assertSameAgreement(replacement, reopened.findById(replacement.id));
+        assertNull(reopened.findById(saved.get(4).id));
+    }
+
+    @DisplayName("Should copy agreements into the table once the journal holds compact_records of them")
+    @Test
+    void shouldCompactIntoTable() throws InterruptedException {
+        JournalAgreementStore journal = openJournal(4);
+        store = journal;
+
+        List<RentalAgreementDao> saved = insert(journal, 4);
+        awaitJournaledAtMost(journal, 0);
+        verifyRentalAgreementCount(4);
+
+        saved.addAll(insert(journal, 3));
+        assertEquals(3, journal.getJournaledCount());
+        for (RentalAgreementDao agreement : saved) {
+            assertSameAgreement(agreement, journal.findById(agreement.id));
+        }
+
+        journal.flush();
+        verifyRentalAgreementCount(7);
+        assertEquals(0, journal.getJournaledCount());
+    }
+
+    @DisplayName("Should return from the save that fills the journal while the compaction it starts waits on the table")
+    @Test
+    void shouldNotWaitForCompactionOnSave() throws Exception {
+        JournalAgreementStore journal = openJournal(4);
+        store = journal;
+        // Reserves the block of ids the saves below use, which would otherwise need the writer
+        insert(journal, 1);
+
+        CountDownLatch release = holdWriter();
+        List<RentalAgreementDao> saved = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> insert(journal, 6));
+        assertEquals(7, journal.getJournaledCount());
+        verifyRentalAgreementCount(0);
+
+        // The compaction copies at least the four that started it; any saved after it read the journal wait for the next
+        release.countDown();
+        awaitJournaledAtMost(journal, 3);
+        for (RentalAgreementDao agreement : saved) {
+            assertSameAgreement(agreement, journal.findById(agreement.id));
+        }
+        journal.flush();
+        verifyRentalAgreementCount(7);
+    }
+
+    @DisplayName("Should not copy an agreement twice when records already in the table are recovered")
+    @Test
+    void shouldIgnoreRecordsAlreadyInTable() throws IOException {
+        JournalAgreementStore before = openJournal(1000);
+        List<RentalAgreementDao> saved = insert(before, 3);
+        new SqliteAgreementStore().insertAllIgnoringExisting(saved);
+
+        JournalAgreementStore after = openJournal(1000);
+        store = after;
+        after.compact();
+
+        verifyRentalAgreementCount(3);
+        assertSameAgreement(saved.get(1), after.findById(saved.get(1).id));
+    }
+
+    @DisplayName("Should take saves while a compaction waits on the table, then keep them at the top of the journal")
+    @Test
+    void shouldSaveDuringCompaction() throws Exception {
+        JournalAgreementStore journal = openJournal(1000);
+        store = journal;
+        List<RentalAgreementDao> copied = insert(journal, 5);
+
+        // Hold the database writer so the compaction's table insert has to wait for it
+        CountDownLatch release = holdWriter();
+        CompletableFuture<Void> compaction = CompletableFuture.runAsync(journal::compact);
+        Thread.sleep(100);
+
+        List<RentalAgreementDao> duringCompaction = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> insert(journal, 3));
+        release.countDown();
+        compaction.get(10, TimeUnit.SECONDS);
+
+        verifyRentalAgreementCount(copied.size());
+        assertEquals(3, journal.getJournaledCount());
+        for (RentalAgreementDao agreement : duringCompaction) {
+            assertSameAgreement(agreement, journal.findById(agreement.id));
+        }
+
+        // Read back from the top after a crash, without the copied records
+        JournalAgreementStore recovered = openJournal(1000);
+        store = recovered;
+        assertEquals(3, recovered.getJournaledCount());
+        recovered.compact();
+        verifyRentalAgreementCount(copied.size() + duringCompaction.size());
+    }
+
+    private static JournalAgreementStore openJournal(int compactRecords) {
+        try {
+            return new JournalAgreementStore(JOURNAL, new SqliteAgreementStore(), compactRecords, 0, 16, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Occupies the database writer until the returned latch is counted down
+    private static CountDownLatch holdWriter() throws InterruptedException {
+        CountDownLatch writerHeld = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> Database.write(handle -> {
+            writerHeld.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        writerHeld.await();
+        return release;
+    }
+
+    // Compactions started by a save run on the compactor thread
+    private static void awaitJournaledAtMost(JournalAgreementStore journal, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (journal.getJournaledCount() > count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(journal.getJournaledCount() <= count, "Journaled: " + journal.getJournaledCount());
+    }
+
+    private static List<RentalAgreementDao> insert(AgreementStore journal, int count) {
+        List<RentalAgreementDao> saved = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            RentalAgreementDao agreement = agreement("JAKD", CHECKOUT_DATE.plusDays(i), 1 + i % 4);
+            journal.insert(agreement);
+            saved.add(agreement);
+        }
+        return saved;
+    }
+
+    // Flips a byte in the middle of a record, as a write cut short by a crash would leave it
+    private static void corruptRecord(int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(JOURNAL.toFile(), "rw")) {
+            long offset = HEADER_BYTES + (long) index * JournalAgreementStore.RECORD_BYTES + 20;
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0xFF);
+        }
+    }
+}
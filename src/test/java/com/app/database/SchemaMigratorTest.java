@@ -0,0 +1,125 @@
+package com.app.database;
+
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SchemaMigratorTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void reset() {
+        System.clearProperty("db.url");
+        Database.closeConnection();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should run the migrations on a new database and record their checksum in user_version")
+    @Test
+    void shouldMigrateNewDatabase() throws SQLException {
+        SQLiteDataSource dataSource = dataSource("new.db");
+        try (Connection connection = dataSource.getConnection()) {
+            SchemaMigrator.migrate(dataSource, connection);
+
+            assertTrue(hasTable(connection, "tools"));
+            assertEquals(SchemaMigrator.getMigrationChecksum(), queryInt(connection, "PRAGMA user_version"));
+        }
+    }
+
+    @DisplayName("Should skip Flyway when user_version matches the checksum of the bundled migrations")
+    @Test
+    void shouldSkipFlywayForMatchingChecksum() throws SQLException {
+        SQLiteDataSource dataSource = dataSource("current.db");
+        try (Connection connection = dataSource.getConnection()) {
+            execute(connection, "PRAGMA user_version = " + SchemaMigrator.getMigrationChecksum());
+
+            SchemaMigrator.migrate(dataSource, connection);
+
+            // Flyway would have created its history table and the schema
+            assertFalse(hasTable(connection, "flyway_schema_history"));
+            assertFalse(hasTable(connection, "tools"));
+        }
+    }
+
+    @DisplayName("Should run Flyway when the migration set has changed since user_version was recorded")
+    @Test
+    void shouldMigrateForChangedChecksum() throws SQLException {
+        SQLiteDataSource dataSource = dataSource("stale.db");
+        int checksum = SchemaMigrator.getMigrationChecksum();
+        try (Connection connection = dataSource.getConnection()) {
+            execute(connection, "PRAGMA user_version = " + (checksum + 1));
+
+            SchemaMigrator.migrate(dataSource, connection);
+
+            assertTrue(hasTable(connection, "tools"));
+            assertEquals(checksum, queryInt(connection, "PRAGMA user_version"));
+        }
+    }
+
+    @DisplayName("Should close what setup opened when a migration fails, so the next use can open the database again")
+    @Test
+    void shouldCleanUpAfterFailedMigration() throws SQLException {
+        SQLiteDataSource dataSource = dataSource("tampered.db");
+        try (Connection connection = dataSource.getConnection()) {
+            SchemaMigrator.migrate(dataSource, connection);
+            // An applied migration that no longer matches its file fails Flyway's validation
+            execute(connection, "UPDATE flyway_schema_history SET checksum = 1 WHERE version = '1'");
+            execute(connection, "PRAGMA user_version = 0");
+        }
+
+        System.setProperty("db.url", "jdbc:sqlite:" + directory.resolve("tampered.db"));
+        assertThrows(FlywayException.class, Database::setup);
+        assertThrows(FlywayException.class, Database::setup);
+
+        System.clearProperty("db.url");
+        try (Statement stmt = Database.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM tools")) {
+            rs.next();
+            assertNotEquals(0, rs.getInt(1));
+        }
+    }
+
+    private SQLiteDataSource dataSource(String name) {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + directory.resolve(name));
+        return dataSource;
+    }
+
+    private static boolean hasTable(Connection connection, String name) throws SQLException {
+        return queryInt(connection, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = '" + name + "'") > 0;
+    }
+
+    private static int queryInt(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.app.database;
+
+import org.junit.jupiter.api.AfterAll;
+
+import java.io.File;
+
+public class SqliteAgreementStoreTest extends AgreementStoreContractTest {
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @Override
+    protected AgreementStore openStore() {
+        return new SqliteAgreementStore();
+    }
+}
@@ -0,0 +1,50 @@
+package com.app.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    @DisplayName("Should place every value in a bucket whose bounds contain it, with contiguous buckets")
+    @Test
+    void shouldBucketValuesContiguously() {
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.getBucket((1L << 41) - 1) + 1; bucket++) {
+            long upperBound = LatencyHistogram.getUpperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.getBucket(previousUpperBound + 1));
+            assertEquals(bucket, LatencyHistogram.getBucket(upperBound));
+            previousUpperBound = upperBound;
+        }
+    }
+
+    @DisplayName("Should report quantiles within 3% of the exact value over values from nanoseconds to seconds")
+    @Test
+    void shouldReportQuantilesWithinThreePercent() {
+        Random random = new Random(20240301L);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        long total = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+            histogram.record(values[i]);
+            total += values[i];
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(total, histogram.getTotalNanos());
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        for (double quantile : new double[]{0.01, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+            long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            long reported = histogram.getValueAtQuantile(quantile);
+            assertTrue(reported >= exact && reported <= exact * 1.03 + 1,
+                    String.format("q%s: exact %d, reported %d", quantile, exact, reported));
+        }
+        assertEquals(0, new LatencyHistogram().getValueAtQuantile(0.5));
+    }
+}
@@ -0,0 +1,297 @@
+package com.app.server;
+
+import com.app.database.Database;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static utilities.TestUtilities.deleteAllRentalAgreements;
+import static utilities.TestUtilities.verifyRentalAgreementCount;
+
+public class RentalHttpServerTest {
+    private static final String CHECKOUT_BODY =
+            "{\"toolCode\": \"JAKD\", \"rentalDays\": 6, \"discountPercent\": 0, \"checkoutDate\": \"9/3/15\"}";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private RentalHttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        System.setProperty("server.shutdown_grace_seconds", "1");
+        server = start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+        System.clearProperty("server.shutdown_grace_seconds");
+        System.clearProperty("server.max_concurrent_requests");
+        System.clearProperty("checkout.enforce_availability");
+        deleteAllRentalAgreements();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should check out a tool with POST /checkout and serve the agreement from its Location")
+    @Test
+    void shouldCheckoutAndViewAgreement() throws Exception {
+        HttpResponse<String> created = post("/checkout", CHECKOUT_BODY);
+
+        assertEquals(201, created.statusCode());
+        assertTrue(created.body().contains("Tool code: JAKD"));
+        assertTrue(created.body().contains("Final charge: $8.97"));
+        String location = created.headers().firstValue("Location").orElseThrow();
+        assertTrue(location.matches("/agreements/\\d+"));
+
+        HttpResponse<String> viewed = get(location);
+        assertEquals(200, viewed.statusCode());
+        assertEquals(created.body(), viewed.body());
+        assertEquals("text/plain; charset=utf-8", viewed.headers().firstValue("Content-Type").orElseThrow());
+    }
+
+    @DisplayName("Should treat a null holidayCalendar as missing and use the default calendar")
+    @Test
+    void shouldDefaultNullHolidayCalendar() throws Exception {
+        HttpResponse<String> created = post("/checkout", "{\"toolCode\": \"LADW\", \"rentalDays\": 3, " +
+                "\"discountPercent\": 10, \"checkoutDate\": \"7/2/20\", \"holidayCalendar\": null}");
+
+        assertEquals(201, created.statusCode());
+        assertTrue(created.body().contains("Charge days: 2"));
+    }
+
+    @DisplayName("Should answer 400 for input the client can fix, naming the problem")
+    @Test
+    void shouldRejectBadInputWith400() throws Exception {
+        assertBadRequest(post("/checkout", "{\"toolCode\": \"JAKD\", \"rentalDays\": \"six\", " +
+                "\"discountPercent\": 0, \"checkoutDate\": \"9/3/15\"}"), "Error converting value to number");
+        assertBadRequest(post("/checkout", "{\"toolCode\": \"JAKD\", \"rentalDays\": 6, " +
+                "\"discountPercent\": 0, \"checkoutDate\": \"not a date\"}"), "Error parsing date");
+        assertBadRequest(post("/checkout", "{\"toolCode\": \"NOPE\", \"rentalDays\": 6, " +
+                "\"discountPercent\": 0, \"checkoutDate\": \"9/3/15\"}"), "Tool code NOPE could not be found.");
+        assertBadRequest(post("/checkout", "{\"toolCode\": \"JAKD\"}"), "Missing field rentalDays.");
+        assertBadRequest(post("/checkout", "{\"toolCode\": \"JA\\u00"), "Incomplete \\u escape");
+        assertBadRequest(post("/checkout", "not json"), "Expected '{'");
+        verifyRentalAgreementCount(0);
+    }
+
+    @DisplayName("Should reject a request body over 64 KiB with 400")
+    @Test
+    void shouldRejectOversizedBody() throws Exception {
+        String padding = " ".repeat(64 * 1024);
+
+        assertBadRequest(post("/checkout", CHECKOUT_BODY + padding), "Request body is too large.");
+        verifyRentalAgreementCount(0);
+    }
+
+    @DisplayName("Should answer 404 for an agreement that does not exist")
+    @Test
+    void shouldAnswer404ForUnknownAgreement() throws Exception {
+        HttpResponse<String> response = get("/agreements/999999");
+
+        assertEquals(404, response.statusCode());
+        assertEquals("Rental agreement with id 999999 could not be found.", response.body());
+    }
+
+    @DisplayName("Should answer 405 with an Allow header for the wrong method")
+    @Test
+    void shouldAnswer405ForWrongMethod() throws Exception {
+        HttpResponse<String> checkout = get("/checkout");
+        assertEquals(405, checkout.statusCode());
+        assertEquals("POST", checkout.headers().firstValue("Allow").orElseThrow());
+
+        HttpResponse<String> view = post("/agreements/1", "");
+        assertEquals(405, view.statusCode());
+        assertEquals("GET", view.headers().firstValue("Allow").orElseThrow());
+    }
+
+    @DisplayName("Should answer 409 when availability is enforced and the tool is already rented")
+    @Test
+    void shouldAnswer409ForUnavailableTool() throws Exception {
+        System.setProperty("checkout.enforce_availability", "true");
+
+        assertEquals(201, post("/checkout", CHECKOUT_BODY).statusCode());
+        HttpResponse<String> conflict = post("/checkout", CHECKOUT_BODY);
+
+        assertEquals(409, conflict.statusCode());
+        assertTrue(conflict.body().startsWith("Error: Tool JAKD is already rented"));
+        verifyRentalAgreementCount(1);
+    }
+
+    @DisplayName("Should quote every rental length with GET /quote without saving an agreement")
+    @Test
+    void shouldQuoteRentalLengths() throws Exception {
+        HttpResponse<String> response = get("/quote?toolCode=LADW&checkoutDate=7/2/20&discountPercent=10&maxRentalDays=3");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json; charset=utf-8", response.headers().firstValue("Content-Type").orElseThrow());
+        // The observed Independence Day on 7/3/20 is free for ladders
+        assertEquals("{\"toolCode\":\"LADW\",\"checkoutDate\":\"2020-07-02\",\"discountPercent\":10,\"quotes\":[" +
+                "{\"rentalDays\":1,\"dueDate\":\"2020-07-03\",\"chargeDays\":0,\"preDiscountChargeInCents\":0," +
+                "\"discountAmountInCents\":0,\"finalChargeInCents\":0}," +
+                "{\"rentalDays\":2,\"dueDate\":\"2020-07-04\",\"chargeDays\":1,\"preDiscountChargeInCents\":199," +
+                "\"discountAmountInCents\":20,\"finalChargeInCents\":179}," +
+                "{\"rentalDays\":3,\"dueDate\":\"2020-07-05\",\"chargeDays\":2,\"preDiscountChargeInCents\":398," +
+                "\"discountAmountInCents\":40,\"finalChargeInCents\":358}]}", response.body());
+        assertBadRequest(get("/quote?toolCode=LADW&checkoutDate=7/2/20&maxRentalDays=0"), "Quotes can cover from 1");
+        verifyRentalAgreementCount(0);
+    }
+
+    @DisplayName("Should total revenue by tool type for a checkout period and utilization by tool")
+    @Test
+    void shouldReportRevenueAndUtilization() throws Exception {
+        assertEquals(201, post("/checkout", CHECKOUT_BODY).statusCode());
+        assertEquals(201, post("/checkout", "{\"toolCode\": \"LADW\", \"rentalDays\": 3, " +
+                "\"discountPercent\": 10, \"checkoutDate\": \"7/2/20\"}").statusCode());
+
+        HttpResponse<String> revenue = get("/revenue?from=9/1/15&to=9/30/15");
+        assertEquals(200, revenue.statusCode());
+        assertEquals("{\"from\":\"2015-09-01\",\"to\":\"2015-09-30\",\"toolTypes\":[" +
+                "{\"toolType\":\"Jackhammer\",\"agreements\":1,\"rentalDays\":6,\"chargeDays\":3," +
+                "\"finalChargeInCents\":897}," +
+                "{\"toolType\":\"Ladder\",\"agreements\":0,\"rentalDays\":0,\"chargeDays\":0," +
+                "\"finalChargeInCents\":0}]}", revenue.body());
+
+        HttpResponse<String> utilization = get("/utilization");
+        assertEquals(200, utilization.statusCode());
+        assertEquals("{\"tools\":[" +
+                "{\"toolCode\":\"JAKD\",\"agreements\":1,\"rentalDays\":6,\"chargeDays\":3,\"finalChargeInCents\":897}," +
+                "{\"toolCode\":\"LADW\",\"agreements\":1,\"rentalDays\":3,\"chargeDays\":2,\"finalChargeInCents\":358}]}",
+                utilization.body());
+
+        assertBadRequest(get("/revenue?from=9/30/15&to=9/1/15"), "must not be before its start");
+        assertBadRequest(get("/revenue?from=9/1/15"), "Missing required parameter to.");
+        assertEquals("GET", post("/utilization", "").headers().firstValue("Allow").orElseThrow());
+    }
+
+    @DisplayName("Should answer availability questions from the index, counting a rental up to its due date")
+    @Test
+    void shouldAnswerAvailability() throws Exception {
+        // JAKD is rented from 9/3/15 up to 9/9/15
+        assertEquals(201, post("/checkout", CHECKOUT_BODY).statusCode());
+
+        HttpResponse<String> rented = get("/availability?toolCode=JAKD&from=9/5/15&to=9/7/15");
+        assertEquals(200, rented.statusCode());
+        assertEquals("{\"toolCode\":\"JAKD\",\"from\":\"2015-09-05\",\"to\":\"2015-09-07\",\"available\":false}",
+                rented.body());
+        assertTrue(get("/availability?toolCode=JAKD&from=9/9/15&to=9/12/15").body().endsWith("\"available\":true}"));
+
+        assertEquals("{\"from\":\"2015-09-05\",\"to\":\"2015-09-07\",\"tools\":[\"CHNS\",\"JAKR\",\"LADW\"]}",
+                get("/availability?from=9/5/15&to=9/7/15").body());
+
+        HttpResponse<String> next = get("/next-available?toolCode=JAKD&from=9/1/15&rentalDays=3");
+        assertEquals(200, next.statusCode());
+        assertEquals("{\"toolCode\":\"JAKD\",\"rentalDays\":3,\"checkoutDate\":\"2015-09-09\"}", next.body());
+        assertTrue(get("/next-available?toolCode=JAKD&from=9/1/15&rentalDays=2").body()
+                .endsWith("\"checkoutDate\":\"2015-09-01\"}"));
+
+        assertBadRequest(get("/availability?toolCode=NOPE&from=9/5/15&to=9/7/15"), "Tool code NOPE could not be found.");
+        assertBadRequest(get("/availability?from=9/7/15&to=9/5/15"), "must be after its start");
+        assertBadRequest(get("/next-available?toolCode=JAKD&from=9/1/15"), "Missing required parameter rentalDays.");
+    }
+
+    @DisplayName("Should answer 503 once server.max_concurrent_requests requests are in flight")
+    @Test
+    void shouldAnswer503AtConcurrencyLimit() throws Exception {
+        server.stop();
+        // With no permits every request is over the limit
+        System.setProperty("server.max_concurrent_requests", "0");
+        server = start();
+
+        HttpResponse<String> rejected = post("/checkout", CHECKOUT_BODY);
+
+        assertEquals(503, rejected.statusCode());
+        assertEquals("Server is at its concurrent request limit, retry shortly.", rejected.body());
+        verifyRentalAgreementCount(0);
+    }
+
+    @DisplayName("Should let an in-flight request finish on shutdown, then refuse connections and close the database")
+    @Test
+    void shouldDrainInFlightRequestsOnStop() throws Exception {
+        int port = server.getPort();
+        try (Socket slow = startSlowCheckout()) {
+            CompletableFuture<Void> stopping = CompletableFuture.runAsync(server::stop);
+            Thread.sleep(100);
+
+            String response = finishSlowCheckout(slow);
+            assertTrue(response.startsWith("HTTP/1.1 201"));
+            stopping.get(10, TimeUnit.SECONDS);
+        }
+        server.awaitStop();
+        server = null;
+
+        assertThrows(ConnectException.class, () -> client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/agreements/1")).build(), HttpResponse.BodyHandlers.ofString()));
+        verifyRentalAgreementCount(1);
+    }
+
+    private static RentalHttpServer start() throws IOException {
+        RentalHttpServer started = new RentalHttpServer(0);
+        started.start();
+        return started;
+    }
+
+    // Sends the headers and part of a checkout body, so the request holds its permit until the rest is sent
+    private Socket startSlowCheckout() throws Exception {
+        byte[] body = CHECKOUT_BODY.getBytes(StandardCharsets.UTF_8);
+        Socket socket = new Socket("localhost", server.getPort());
+        OutputStream out = socket.getOutputStream();
+        out.write(("POST /checkout HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n" +
+                "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body, 0, 10);
+        out.flush();
+        // Give the server time to start handling it
+        Thread.sleep(200);
+        return socket;
+    }
+
+    private static String finishSlowCheckout(Socket socket) throws IOException {
+        byte[] body = CHECKOUT_BODY.getBytes(StandardCharsets.UTF_8);
+        socket.getOutputStream().write(body, 10, body.length - 10);
+        socket.getOutputStream().flush();
+        InputStream in = socket.getInputStream();
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private static void assertBadRequest(HttpResponse<String> response, String message) {
+        assertEquals(400, response.statusCode(), response.body());
+        assertTrue(response.body().contains(message), response.body());
+    }
+}
@@ -0,0 +1,101 @@
+package com.app.services;
+
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolDao;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AgreementRendererTest {
+    private static final long SEED = 20150903L;
+    private static final int ITERATIONS = 10_000;
+
+    @DisplayName("Should render text agreements exactly as DateTimeFormatter and NumberFormat did")
+    @Test
+    void shouldRenderTextLikeFormatterBasedOutput() {
+        Random random = new Random(SEED);
+        int[] centBounds = {100, 10_000, 1_000_000, Integer.MAX_VALUE};
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            int bound = centBounds[random.nextInt(centBounds.length)];
+            RentalAgreementDao agreement = createAgreement(random.nextInt(Integer.MAX_VALUE),
+                    LocalDate.of(1950, 1, 1).plusDays(random.nextInt(150 * 365)),
+                    random.nextInt(bound), random.nextInt(bound), random.nextInt(bound), random.nextInt(bound));
+
+            assertEquals(formatWithFormatters(agreement), AgreementRenderer.render(agreement, AgreementRenderer.Format.TEXT));
+        }
+    }
+
+    @DisplayName("Should render JSON with ISO dates and amounts in cents")
+    @Test
+    void shouldRenderJson() {
+        RentalAgreementDao agreement = createAgreement(7, LocalDate.of(2015, 9, 3), 299, 123456, 12346, 111110);
+        agreement.tool.brand = "Ridgid \"Pro\"";
+
+        assertEquals("{\"id\":7,\"toolCode\":\"JAKR\",\"toolType\":\"Jackhammer\",\"toolBrand\":\"Ridgid \\\"Pro\\\"\"," +
+                        "\"rentalDays\":6,\"checkoutDate\":\"2015-09-03\",\"dueDate\":\"2015-09-09\"," +
+                        "\"dailyRentalChargeInCents\":299,\"chargeDays\":3,\"preDiscountChargeInCents\":123456," +
+                        "\"discountPercent\":10,\"discountAmountInCents\":12346,\"finalChargeInCents\":111110}",
+                AgreementRenderer.render(agreement, AgreementRenderer.Format.JSON));
+    }
+
+    @DisplayName("Should render CSV rows matching the header, quoting fields that need it")
+    @Test
+    void shouldRenderCsv() {
+        RentalAgreementDao agreement = createAgreement(7, LocalDate.of(2015, 9, 3), 299, 123456, 12346, 111110);
+        agreement.tool.brand = "Ridgid, \"Pro\"";
+
+        assertEquals(13, AgreementRenderer.CSV_HEADER.split(",").length);
+        assertEquals("7,JAKR,Jackhammer,\"Ridgid, \"\"Pro\"\"\",6,2015-09-03,2015-09-09,299,3,123456,10,12346,111110",
+                AgreementRenderer.render(agreement, AgreementRenderer.Format.CSV));
+    }
+
+    // Reference implementation: the formatting used before the renderer
+    private static String formatWithFormatters(RentalAgreementDao dao) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yy");
+        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.US);
+
+        return "Id: " + dao.id + "\n" +
+               "Tool code: " + dao.tool.code + "\n" +
+               "Tool type: " + dao.tool.type + "\n" +
+               "Tool brand: " + dao.tool.brand + "\n" +
+               "Rental days: " + dao.rentalDays + "\n" +
+               "Checkout date: " + dao.checkoutDate.format(formatter) + "\n" +
+               "Due date: " + dao.dueDate.format(formatter) + "\n" +
+               "Daily rental charge: " + currencyFormat.format(dao.dailyRentalChargeInCents * 0.01) + "\n" +
+               "Charge days: " + dao.chargeDays + "\n" +
+               "Pre-discount charge: " + currencyFormat.format(dao.preDiscountChargeInCents * 0.01) + "\n" +
+               "Discount percent: " + dao.discountPercent + "%" + "\n" +
+               "Discount amount: " + currencyFormat.format(dao.discountAmountInCents * 0.01) + "\n" +
+               "Final charge: " + currencyFormat.format(dao.finalChargeInCents * 0.01);
+    }
+
+    private static RentalAgreementDao createAgreement(int id, LocalDate checkoutDate, int dailyCharge,
+                                                      int preDiscountCharge, int discountAmount, int finalCharge) {
+        ToolDao tool = new ToolDao();
+        tool.code = "JAKR";
+        tool.type = "Jackhammer";
+        tool.brand = "Ridgid";
+
+        RentalAgreementDao agreement = new RentalAgreementDao();
+        agreement.id = id;
+        agreement.tool = tool;
+        agreement.rentalDays = 6;
+        agreement.checkoutDate = checkoutDate;
+        agreement.dueDate = checkoutDate.plusDays(6);
+        agreement.dailyRentalChargeInCents = dailyCharge;
+        agreement.chargeDays = 3;
+        agreement.preDiscountChargeInCents = preDiscountCharge;
+        agreement.discountPercent = 10;
+        agreement.discountAmountInCents = discountAmount;
+        agreement.finalChargeInCents = finalCharge;
+        return agreement;
+    }
+}
@@ -0,0 +1,162 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import com.app.database.dao.ToolTypeChargesDao;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static utilities.TestUtilities.deleteAllRentalAgreements;
+import static utilities.TestUtilities.verifyRentalAgreementCount;
+
+public class AgreementRepricerTest {
+    // Covers Independence Day and Labor Day
+    private static final LocalDate FIRST_CHECKOUT_DATE = LocalDate.of(2015, 6, 29);
+    private static final String[] TOOL_CODES = {"CHNS", "LADW", "JAKD", "JAKR"};
+
+    @AfterEach
+    void reset() {
+        deleteAllRentalAgreements();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should reprice every agreement to what it was charged when the rates are unchanged, on any number of threads")
+    @Test
+    void shouldMatchSavedChargesForCurrentRates() {
+        List<RentalAgreementDao> agreements = checkOut(120);
+        LocalDate from = FIRST_CHECKOUT_DATE;
+        LocalDate to = FIRST_CHECKOUT_DATE.plusDays(90);
+
+        AgreementRepricer.RepricingResult result = AgreementRepricer.reprice(List.of(), from, to,
+                HolidayCalendar.DEFAULT_CALENDAR, 1);
+
+        assertEquals(agreements.size(), result.agreements());
+        Map<String, long[]> saved = new TreeMap<>();
+        for (RentalAgreementDao agreement : agreements) {
+            long[] totals = saved.computeIfAbsent(agreement.tool.type, type -> new long[3]);
+            totals[0] += 1;
+            totals[1] += agreement.chargeDays;
+            totals[2] += agreement.finalChargeInCents;
+        }
+        assertEquals(saved.keySet().stream().toList(),
+                result.toolTypes().stream().map(AgreementRepricer.ToolTypeDelta::toolType).toList());
+        for (AgreementRepricer.ToolTypeDelta delta : result.toolTypes()) {
+            long[] totals = saved.get(delta.toolType());
+            assertEquals(totals[0], delta.agreements());
+            assertEquals(totals[1], delta.chargeDays());
+            assertEquals(totals[1], delta.repricedChargeDays());
+            assertEquals(totals[2], delta.finalChargeInCents());
+            assertEquals(0, delta.differenceInCents());
+        }
+
+        assertEquals(result.toolTypes(), AgreementRepricer.reprice(List.of(), from, to,
+                HolidayCalendar.DEFAULT_CALENDAR, 4).toolTypes());
+    }
+
+    @DisplayName("Should price agreements in the period with the new rates, counting days afresh, without saving anything")
+    @Test
+    void shouldRepriceWithNewRates() {
+        List<RentalAgreementDao> agreements = checkOut(120);
+        LocalDate from = FIRST_CHECKOUT_DATE.plusDays(3);
+        LocalDate to = FIRST_CHECKOUT_DATE.plusDays(70);
+
+        // Ladders stop charging for weekends and start charging for holidays
+        ToolTypeChargesDao ladder = new ToolTypeChargesDao();
+        ladder.toolType = "Ladder";
+        ladder.dailyChargeInCents = 249;
+        ladder.hasWeekdayCharge = true;
+        ladder.hasHolidayCharge = true;
+
+        AgreementRepricer.RepricingResult result = AgreementRepricer.reprice(List.of(ladder), from, to,
+                HolidayCalendar.DEFAULT_CALENDAR, 3);
+
+        HolidayCalendar calendar = HolidayCalendar.forName(HolidayCalendar.DEFAULT_CALENDAR);
+        long count = 0;
+        long ladderCharged = 0;
+        long ladderChargeDays = 0;
+        long ladderRepriced = 0;
+        for (RentalAgreementDao agreement : agreements) {
+            if (agreement.checkoutDate.isBefore(from) || agreement.checkoutDate.isAfter(to)) {
+                continue;
+            }
+            count += 1;
+            if (!agreement.tool.type.equals("Ladder")) {
+                continue;
+            }
+
+            // Counted day by day, independently of the charge day index
+            int chargeDays = 0;
+            for (LocalDate day = agreement.checkoutDate.plusDays(1); !day.isAfter(agreement.dueDate); day = day.plusDays(1)) {
+                if (calendar.isHoliday(day) || !CalendarUtility.isWeekend(day)) {
+                    chargeDays += 1;
+                }
+            }
+            int preDiscountCharge = chargeDays * 249;
+            ladderCharged += agreement.finalChargeInCents;
+            ladderChargeDays += chargeDays;
+            ladderRepriced += preDiscountCharge - Math.round(preDiscountCharge * agreement.discountPercent / 100.0);
+        }
+
+        assertEquals(count, result.agreements());
+        AgreementRepricer.ToolTypeDelta ladderDelta = result.toolTypes().stream()
+                .filter(delta -> delta.toolType().equals("Ladder")).findFirst().orElseThrow();
+        assertEquals(ladderCharged, ladderDelta.finalChargeInCents());
+        assertEquals(ladderChargeDays, ladderDelta.repricedChargeDays());
+        assertEquals(ladderRepriced, ladderDelta.repricedFinalChargeInCents());
+        assertEquals(ladderRepriced - ladderCharged, ladderDelta.differenceInCents());
+        for (AgreementRepricer.ToolTypeDelta delta : result.toolTypes()) {
+            if (!delta.toolType().equals("Ladder")) {
+                assertEquals(0, delta.differenceInCents());
+            }
+        }
+
+        verifyRentalAgreementCount(agreements.size());
+        for (RentalAgreementDao agreement : agreements) {
+            assertEquals(agreement.finalChargeInCents,
+                    ToolRentalService.findRentalAgreement(agreement.id).finalChargeInCents);
+        }
+    }
+
+    @DisplayName("Should reject more threads than there are pooled read connections for them to read on")
+    @Test
+    void shouldRejectMoreThreadsThanPooledConnections() {
+        assertThrows(IllegalArgumentException.class, () -> AgreementRepricer.reprice(List.of(), FIRST_CHECKOUT_DATE,
+                FIRST_CHECKOUT_DATE, HolidayCalendar.DEFAULT_CALENDAR, Database.getReadPoolSize() + 1));
+    }
+
+    @DisplayName("Should reject rates for a tool type that does not exist")
+    @Test
+    void shouldRejectUnknownToolType() {
+        ToolTypeChargesDao charges = new ToolTypeChargesDao();
+        charges.toolType = "Wheelbarrow";
+        charges.dailyChargeInCents = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> AgreementRepricer.reprice(List.of(charges),
+                FIRST_CHECKOUT_DATE, FIRST_CHECKOUT_DATE, HolidayCalendar.DEFAULT_CALENDAR, 1));
+    }
+
+    private static List<RentalAgreementDao> checkOut(int count) {
+        List<RentalAgreementDao> agreements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            agreements.add(ToolRentalService.checkoutAgreement(TOOL_CODES[i % 4], 1 + i % 9, i % 4 * 10,
+                    FIRST_CHECKOUT_DATE.plusDays(i % 75), HolidayCalendar.DEFAULT_CALENDAR));
+        }
+        return agreements;
+    }
+}
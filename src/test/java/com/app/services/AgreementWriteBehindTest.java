@@ -0,0 +1,127 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static utilities.TestUtilities.deleteAllRentalAgreements;
+import static utilities.TestUtilities.verifyRentalAgreementCount;
+
+public class AgreementWriteBehindTest {
+    private static final LocalDate CHECKOUT_DATE = LocalDate.of(2015, 9, 3);
+
+    @BeforeEach
+    void enableWriteBehind() {
+        System.setProperty("agreement.write_behind", "true");
+    }
+
+    @AfterEach
+    void reset() {
+        Database.closeConnection();
+        System.clearProperty("agreement.write_behind");
+        System.clearProperty("agreement.write_behind.max_queue");
+        System.clearProperty("agreement.write_behind.offer_timeout_ms");
+        System.clearProperty("agreement.write_behind.id_block_size");
+        deleteAllRentalAgreements();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should return agreements with unique ids at once and have every one viewable and written after a flush")
+    @Test
+    void shouldWriteQueuedAgreements() {
+        System.setProperty("agreement.write_behind.id_block_size", "7");
+
+        List<RentalAgreementDao> agreements = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            agreements.add(ToolRentalService.checkoutAgreement("LADW", 1 + i % 5, 10, CHECKOUT_DATE.plusDays(i),
+                    HolidayCalendar.DEFAULT_CALENDAR));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (RentalAgreementDao agreement : agreements) {
+            assertTrue(ids.add(agreement.id), "Duplicate id " + agreement.id);
+            assertSame(agreement, ToolRentalService.findRentalAgreement(agreement.id));
+        }
+
+        AgreementWriteBehind.flush();
+        verifyRentalAgreementCount(agreements.size());
+        assertEquals(agreements.size(), AgreementWriteBehind.getStats().written());
+
+        // A synchronous save afterwards is numbered past the reserved blocks
+        System.clearProperty("agreement.write_behind");
+        RentalAgreementDao saved = ToolRentalService.checkoutAgreement("JAKD", 3, 0, CHECKOUT_DATE,
+                HolidayCalendar.DEFAULT_CALENDAR);
+        assertTrue(ids.stream().allMatch(id -> id < saved.id));
+        verifyRentalAgreementCount(agreements.size() + 1);
+    }
+
+    @DisplayName("Should write queued agreements before the database closes")
+    @Test
+    void shouldDrainQueueOnClose() {
+        List<RentalAgreementDao> agreements = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            agreements.add(ToolRentalService.checkoutAgreement("CHNS", 4, 0, CHECKOUT_DATE,
+                    HolidayCalendar.DEFAULT_CALENDAR));
+        }
+
+        Database.closeConnection();
+
+        verifyRentalAgreementCount(agreements.size());
+        for (RentalAgreementDao agreement : agreements) {
+            assertEquals(agreement.finalChargeInCents,
+                    ToolRentalService.findRentalAgreement(agreement.id).finalChargeInCents);
+        }
+    }
+
+    @DisplayName("Should save synchronously rather than lose agreements when the queue is full")
+    @Test
+    void shouldFallBackToSynchronousSaves() throws InterruptedException {
+        System.setProperty("agreement.write_behind.max_queue", "1");
+        System.setProperty("agreement.write_behind.offer_timeout_ms", "0");
+
+        // Reserve the ids first, then hold the database writer for a moment so the queue is certain to fill
+        ToolRentalService.checkoutAgreement("JAKR", 2, 0, CHECKOUT_DATE, HolidayCalendar.DEFAULT_CALENDAR);
+        AgreementWriteBehind.flush();
+        CountDownLatch writerHeld = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> Database.write(handle -> {
+            writerHeld.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        writerHeld.await();
+
+        for (int i = 1; i < 200; i++) {
+            ToolRentalService.checkoutAgreement("JAKR", 2, 0, CHECKOUT_DATE, HolidayCalendar.DEFAULT_CALENDAR);
+        }
+        AgreementWriteBehind.flush();
+
+        AgreementWriteBehind.Stats stats = AgreementWriteBehind.getStats();
+        assertEquals(200, stats.written());
+        assertTrue(stats.synchronousFallbacks() > 0);
+        verifyRentalAgreementCount(200);
+    }
+}
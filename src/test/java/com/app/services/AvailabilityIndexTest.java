@@ -0,0 +1,100 @@
+package com.app.services;
+
+import com.app.database.Database;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static utilities.TestUtilities.deleteAllRentalAgreements;
+
+public class AvailabilityIndexTest {
+    private static final long SEED = 20240901L;
+    private static final int DAYS = 400;
+
+    @AfterEach
+    void reset() {
+        deleteAllRentalAgreements();
+        AvailabilityIndex.invalidate();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should answer availability and next free day like a day-by-day scan of random rentals")
+    @Test
+    void shouldMatchDayByDayScan() {
+        Random random = new Random(SEED);
+
+        for (int round = 0; round < 200; round++) {
+            boolean[] rented = new boolean[DAYS + 64];
+            RentalIntervals intervals = RentalIntervals.EMPTY;
+            int rentals = random.nextInt(40);
+            for (int i = 0; i < rentals; i++) {
+                int start = random.nextInt(DAYS);
+                int end = start + 1 + random.nextInt(10);
+                for (int day = start; day < end; day++) {
+                    rented[day] = true;
+                }
+                // Added a few at a time, as both loading and saving do
+                intervals = intervals.withRentals(new int[]{start}, new int[]{end});
+            }
+
+            for (int query = 0; query < 200; query++) {
+                int from = random.nextInt(DAYS);
+                int length = 1 + random.nextInt(12);
+                assertEquals(isFreeByScan(rented, from, from + length), intervals.isFree(from, from + length),
+                        String.format("isFree(%d, %d) in round %d", from, from + length, round));
+                assertEquals(findNextFreeByScan(rented, from, length), intervals.findNextFree(from, length),
+                        String.format("findNextFree(%d, %d) in round %d", from, length, round));
+            }
+        }
+    }
+
+    @DisplayName("Should reflect agreements saved after the index was loaded")
+    @Test
+    void shouldReflectNewAgreements() {
+        LocalDate checkoutDate = LocalDate.of(2031, 3, 2);
+        assertTrue(AvailabilityIndex.isAvailable("JAKD", checkoutDate, checkoutDate.plusDays(3)));
+        assertTrue(AvailabilityIndex.findAvailableTools(checkoutDate, checkoutDate.plusDays(3)).contains("JAKD"));
+
+        ToolRentalService.checkoutAgreement("JAKD", 4, 0, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR);
+
+        assertFalse(AvailabilityIndex.isAvailable("JAKD", checkoutDate.plusDays(3), checkoutDate.plusDays(5)));
+        assertTrue(AvailabilityIndex.isAvailable("JAKD", checkoutDate.plusDays(4), checkoutDate.plusDays(5)));
+        assertEquals(checkoutDate.plusDays(4), AvailabilityIndex.findNextAvailableDate("JAKD", checkoutDate, 2));
+        assertEquals(checkoutDate.minusDays(2), AvailabilityIndex.findNextAvailableDate("JAKD", checkoutDate.minusDays(2), 2));
+
+        List<String> available = AvailabilityIndex.findAvailableTools(checkoutDate, checkoutDate.plusDays(1));
+        assertFalse(available.contains("JAKD"));
+        assertTrue(available.contains("JAKR"));
+    }
+
+    private static boolean isFreeByScan(boolean[] rented, int from, int to) {
+        for (int day = from; day < to; day++) {
+            if (rented[day]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int findNextFreeByScan(boolean[] rented, int from, int length) {
+        for (int start = from; ; start++) {
+            if (isFreeByScan(rented, start, start + length)) {
+                return start;
+            }
+        }
+    }
+}
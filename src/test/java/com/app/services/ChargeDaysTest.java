@@ -0,0 +1,163 @@
+package com.app.services;
+
+import com.app.database.dao.HolidayRuleDao;
+import com.app.database.dao.ToolTypeChargesDao;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ChargeDaysTest {
+    private static final long SEED = 20240704L;
+    private static final int ITERATIONS = 20_000;
+    private static final LocalDate EARLIEST_CHECKOUT = LocalDate.of(1990, 1, 1);
+    private static final int CHECKOUT_DATE_RANGE_IN_DAYS = 110 * 365;
+    private static final int MAXIMUM_RENTAL_DAYS = 3650;
+    private static final HolidayCalendar CALENDAR = new HolidayCalendar(HolidayCalendar.DEFAULT_CALENDAR, getDefaultRules());
+
+    @DisplayName("Should match day-by-day classification for random tool types, checkout dates and rental lengths")
+    @Test
+    void shouldMatchDayByDayClassificationForRandomRentals() {
+        List<ToolTypeChargesDao> chargeTypes = getAllChargeTypes();
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            ToolTypeChargesDao charges = chargeTypes.get(random.nextInt(chargeTypes.size()));
+            LocalDate checkoutDate = EARLIEST_CHECKOUT.plusDays(random.nextInt(CHECKOUT_DATE_RANGE_IN_DAYS));
+            // Favour short rentals, which cross holiday and weekend boundaries in the most varied ways
+            int rentalDays = random.nextBoolean() ? 1 + random.nextInt(14) : 1 + random.nextInt(MAXIMUM_RENTAL_DAYS);
+            LocalDate dueDate = checkoutDate.plusDays(rentalDays);
+
+            assertEquals(getChargeDaysByIteration(charges, checkoutDate, dueDate),
+                    ToolRentalService.getChargeDays(charges, CALENDAR, checkoutDate, dueDate),
+                    String.format("Charge days differ for %s from %s for %d days", describe(charges), checkoutDate, rentalDays));
+        }
+    }
+
+    @DisplayName("Should match day-by-day classification for every checkout date around observed holidays")
+    @Test
+    void shouldMatchDayByDayClassificationAroundObservedHolidays() {
+        List<ToolTypeChargesDao> chargeTypes = getAllChargeTypes();
+
+        for (int year = 2014; year <= 2030; year++) {
+            LocalDate start = LocalDate.of(year, 6, 25);
+            for (int offset = 0; offset < 80; offset++) {
+                LocalDate checkoutDate = start.plusDays(offset);
+                for (int rentalDays = 1; rentalDays <= 10; rentalDays++) {
+                    LocalDate dueDate = checkoutDate.plusDays(rentalDays);
+                    for (ToolTypeChargesDao charges : chargeTypes) {
+                        assertEquals(getChargeDaysByIteration(charges, checkoutDate, dueDate),
+                                ToolRentalService.getChargeDays(charges, CALENDAR, checkoutDate, dueDate));
+                    }
+                }
+            }
+        }
+    }
+
+    @DisplayName("Should classify holidays the same as the original hard-coded July 4th and Labor Day rules")
+    @Test
+    void shouldClassifyHolidaysLikeOriginalRules() {
+        for (LocalDate date = LocalDate.of(1990, 1, 1); date.getYear() < 2100; date = date.plusDays(1)) {
+            assertEquals(isHolidayByOriginalRules(date), CALENDAR.isHoliday(date), date.toString());
+        }
+    }
+
+    @DisplayName("Should match the closed-form count inside the charge day index window and fall back outside it")
+    @Test
+    void shouldMatchClosedFormAroundChargeDayIndexWindow() {
+        ChargeDayIndex index = new ChargeDayIndex(CALENDAR, 2000, 2001);
+        LocalDate windowStart = LocalDate.of(2000, 1, 1);
+        LocalDate windowEnd = LocalDate.of(2002, 1, 1);
+
+        for (ToolTypeChargesDao charges : getAllChargeTypes()) {
+            int mask = ChargeDayIndex.getMask(charges);
+            for (LocalDate checkoutDate = windowStart.minusDays(20); checkoutDate.isBefore(windowEnd.plusDays(5));
+                 checkoutDate = checkoutDate.plusDays(1)) {
+                for (int rentalDays = 1; rentalDays <= 20; rentalDays++) {
+                    LocalDate dueDate = checkoutDate.plusDays(rentalDays);
+                    int indexed = index.getChargeDays(mask, checkoutDate, dueDate);
+                    boolean insideWindow = !checkoutDate.plusDays(1).isBefore(windowStart) && dueDate.isBefore(windowEnd);
+
+                    assertEquals(insideWindow, indexed >= 0, String.format("%s for %d days", checkoutDate, rentalDays));
+                    if (insideWindow) {
+                        assertEquals(ToolRentalService.countChargeDays(charges, CALENDAR, checkoutDate, dueDate), indexed);
+                    }
+                }
+            }
+        }
+    }
+
+    // Reference implementation: classify every day in the rental period individually
+    private static int getChargeDaysByIteration(ToolTypeChargesDao charges, LocalDate checkoutDate, LocalDate dueDate) {
+        int chargeDays = 0;
+        for (LocalDate date = checkoutDate.plusDays(1); !date.isAfter(dueDate); date = date.plusDays(1)) {
+            if (isHolidayByOriginalRules(date)) {
+                if (charges.hasHolidayCharge) chargeDays += 1;
+            } else if (CalendarUtility.isWeekend(date) && charges.hasWeekendCharge) {
+                chargeDays += 1;
+            } else if (CalendarUtility.isWeekday(date) && charges.hasWeekdayCharge) {
+                chargeDays += 1;
+            }
+        }
+        return chargeDays;
+    }
+
+    // July 4th, observed on the nearest weekday, and the first Monday in September
+    private static boolean isHolidayByOriginalRules(LocalDate date) {
+        boolean julyFourth = date.getMonth() == Month.JULY && date.getDayOfMonth() == 4;
+        if (julyFourth && CalendarUtility.isWeekend(date)) {
+            return false;
+        }
+        LocalDate laborDay = date.with(TemporalAdjusters.firstInMonth(DayOfWeek.MONDAY));
+        return julyFourth
+                || date.getDayOfWeek() == DayOfWeek.FRIDAY && date.plusDays(1).getMonth() == Month.JULY && date.plusDays(1).getDayOfMonth() == 4
+                || date.getDayOfWeek() == DayOfWeek.MONDAY && date.minusDays(1).getMonth() == Month.JULY && date.minusDays(1).getDayOfMonth() == 4
+                || date.getMonth() == Month.SEPTEMBER && date.equals(laborDay);
+    }
+
+    // Mirrors the rules seeded for the default calendar in V2__Holiday_calendars.sql
+    private static List<HolidayRuleDao> getDefaultRules() {
+        HolidayRuleDao independenceDay = new HolidayRuleDao();
+        independenceDay.name = "Independence Day";
+        independenceDay.ruleType = "FIXED_DATE";
+        independenceDay.month = 7;
+        independenceDay.dayOfMonth = 4;
+        independenceDay.observeNearestWeekday = true;
+
+        HolidayRuleDao laborDay = new HolidayRuleDao();
+        laborDay.name = "Labor Day";
+        laborDay.ruleType = "NTH_WEEKDAY_OF_MONTH";
+        laborDay.month = 9;
+        laborDay.dayOfWeek = 1;
+        laborDay.weekOfMonth = 1;
+
+        return List.of(independenceDay, laborDay);
+    }
+
+    private static List<ToolTypeChargesDao> getAllChargeTypes() {
+        List<ToolTypeChargesDao> chargeTypes = new ArrayList<>();
+        for (int flags = 0; flags < 8; flags++) {
+            ToolTypeChargesDao charges = new ToolTypeChargesDao();
+            charges.toolType = "Type" + flags;
+            charges.dailyChargeInCents = 100;
+            charges.hasWeekdayCharge = (flags & 1) != 0;
+            charges.hasWeekendCharge = (flags & 2) != 0;
+            charges.hasHolidayCharge = (flags & 4) != 0;
+            chargeTypes.add(charges);
+        }
+        return chargeTypes;
+    }
+
+    private static String describe(ToolTypeChargesDao charges) {
+        return String.format("weekday=%b weekend=%b holiday=%b",
+                charges.hasWeekdayCharge, charges.hasWeekendCharge, charges.hasHolidayCharge);
+    }
+}
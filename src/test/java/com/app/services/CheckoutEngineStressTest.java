@@ -0,0 +1,169 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.database.dao.RentalAgreementDao;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CheckoutEngineStressTest {
+    private static final String TOOL_PREFIX = "STRS";
+    private static final int TOOL_COUNT = 64;
+    private static final int CONTENDED_TOOL_COUNT = 4;
+    private static final int ATTEMPTS_PER_THREAD = 150;
+    private static final int SCALING_CHECKOUTS_PER_THREAD = 100;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2030, 1, 1);
+    private static final int MAXIMUM_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    @BeforeAll
+    static void createTools() throws SQLException {
+        try (Statement stmt = Database.getConnection().createStatement()) {
+            for (int i = 0; i < TOOL_COUNT; i++) {
+                stmt.executeUpdate(String.format("INSERT INTO tools (code, type, brand) VALUES ('%s', 'Ladder', 'Werner')",
+                        toolCode(i)));
+            }
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws SQLException {
+        try (Statement stmt = Database.getConnection().createStatement()) {
+            String stressTools = "SELECT id FROM tools WHERE code LIKE '" + TOOL_PREFIX + "%'";
+            stmt.executeUpdate("DELETE FROM rental_agreements WHERE tool_id IN (" + stressTools + ")");
+            stmt.executeUpdate("DELETE FROM tools WHERE code LIKE '" + TOOL_PREFIX + "%'");
+        }
+        ToolCatalog.invalidateAll();
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should never double-book a tool when many threads check out the same few tools at once")
+    @Test
+    void shouldNeverDoubleBookUnderContention() throws Exception {
+        AtomicInteger unavailable = new AtomicInteger();
+        List<Callable<List<RentalAgreementDao>>> workers = new ArrayList<>();
+        for (int thread = 0; thread < MAXIMUM_THREADS; thread++) {
+            Random random = new Random(20300101L + thread);
+            workers.add(() -> {
+                List<RentalAgreementDao> saved = new ArrayList<>();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    String toolCode = toolCode(random.nextInt(CONTENDED_TOOL_COUNT));
+                    LocalDate checkoutDate = FIRST_DATE.plusDays(random.nextInt(120));
+                    try {
+                        saved.add(CheckoutEngine.checkout(toolCode, 1 + random.nextInt(5), 0, checkoutDate,
+                                HolidayCalendar.DEFAULT_CALENDAR));
+                    } catch (ToolUnavailableException ex) {
+                        unavailable.incrementAndGet();
+                    }
+                }
+                return saved;
+            });
+        }
+
+        List<RentalAgreementDao> saved = new ArrayList<>();
+        for (List<RentalAgreementDao> agreements : runAll(workers)) {
+            saved.addAll(agreements);
+        }
+
+        assertEquals(MAXIMUM_THREADS * ATTEMPTS_PER_THREAD, saved.size() + unavailable.get());
+        assertTrue(unavailable.get() > 0, "Expected contention to turn some checkouts away");
+        assertEquals(saved.size(), countAgreementsForContendedTools());
+
+        Map<String, List<RentalAgreementDao>> byTool = saved.stream().collect(Collectors.groupingBy(a -> a.tool.code));
+        for (List<RentalAgreementDao> agreements : byTool.values()) {
+            agreements.sort(Comparator.comparing((RentalAgreementDao a) -> a.checkoutDate));
+            for (int i = 1; i < agreements.size(); i++) {
+                RentalAgreementDao previous = agreements.get(i - 1);
+                RentalAgreementDao current = agreements.get(i);
+                assertFalse(current.checkoutDate.isBefore(previous.dueDate),
+                        String.format("%s is booked from %s to %s and again from %s", current.tool.code,
+                                previous.checkoutDate, previous.dueDate, current.checkoutDate));
+            }
+        }
+    }
+
+    @DisplayName("Should accept every checkout of distinct tools from 1 to N threads")
+    @Test
+    void shouldAcceptDistinctToolsAtEveryThreadCount() throws Exception {
+        // Each round books a fresh stretch of the calendar, so no checkout collides with an earlier round's
+        LocalDate roundStart = FIRST_DATE.plusYears(1);
+
+        for (int threads = 1; threads <= MAXIMUM_THREADS; threads *= 2) {
+            List<Callable<List<RentalAgreementDao>>> workers = new ArrayList<>();
+            int toolsPerThread = (TOOL_COUNT - CONTENDED_TOOL_COUNT) / threads;
+            LocalDate start = roundStart;
+            for (int thread = 0; thread < threads; thread++) {
+                int firstTool = CONTENDED_TOOL_COUNT + thread * toolsPerThread;
+                workers.add(() -> {
+                    List<RentalAgreementDao> saved = new ArrayList<>();
+                    for (int i = 0; i < SCALING_CHECKOUTS_PER_THREAD; i++) {
+                        String toolCode = toolCode(firstTool + i % toolsPerThread);
+                        LocalDate checkoutDate = start.plusDays(2L * (i / toolsPerThread));
+                        saved.add(CheckoutEngine.checkout(toolCode, 2, 0, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR));
+                    }
+                    return saved;
+                });
+            }
+
+            int checkouts = 0;
+            for (List<RentalAgreementDao> saved : runAll(workers)) {
+                checkouts += saved.size();
+            }
+
+            assertEquals(threads * SCALING_CHECKOUTS_PER_THREAD, checkouts);
+            roundStart = roundStart.plusYears(1);
+        }
+    }
+
+    private static <T> List<T> runAll(List<Callable<T>> workers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : executor.invokeAll(workers)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int countAgreementsForContendedTools() throws SQLException {
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < CONTENDED_TOOL_COUNT; i++) {
+            codes.add("'" + toolCode(i) + "'");
+        }
+        try (Statement stmt = Database.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM rental_agreements r JOIN tools t ON r.tool_id = t.id " +
+                     "WHERE t.code IN (" + String.join(",", codes) + ")")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static String toolCode(int index) {
+        return String.format("%s%02d", TOOL_PREFIX, index);
+    }
+}
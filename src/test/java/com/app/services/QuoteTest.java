@@ -0,0 +1,66 @@
+package com.app.services;
+
+import com.app.database.Database;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static utilities.TestUtilities.verifyRentalAgreementCount;
+
+public class QuoteTest {
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should quote every rental length the same as checking each one out, without saving agreements")
+    @Test
+    void shouldQuoteLikeIndividualCheckouts() {
+        String[] toolCodes = {"CHNS", "LADW", "JAKD"};
+        LocalDate[] checkoutDates = {LocalDate.of(2015, 7, 2), LocalDate.of(2015, 9, 3), LocalDate.of(2020, 7, 2)};
+        HolidayCalendar calendar = HolidayCalendar.forName(HolidayCalendar.DEFAULT_CALENDAR);
+
+        for (String toolCode : toolCodes) {
+            ToolCatalog.Entry entry = ToolCatalog.get(toolCode);
+            for (LocalDate checkoutDate : checkoutDates) {
+                List<Quote> quotes = ToolRentalService.quote(toolCode, 40, 15, checkoutDate,
+                        HolidayCalendar.DEFAULT_CALENDAR);
+
+                assertEquals(40, quotes.size());
+                for (Quote quote : quotes) {
+                    LocalDate dueDate = checkoutDate.plusDays(quote.rentalDays());
+                    int chargeDays = ToolRentalService.getChargeDays(entry.charges(), calendar, checkoutDate, dueDate);
+
+                    assertEquals(dueDate, quote.dueDate());
+                    assertEquals(chargeDays, quote.chargeDays(),
+                            String.format("%s from %s for %d days", toolCode, checkoutDate, quote.rentalDays()));
+                    assertEquals(chargeDays * entry.charges().dailyChargeInCents, quote.preDiscountChargeInCents());
+                    assertEquals(Math.round(quote.preDiscountChargeInCents() * 0.15), quote.discountAmountInCents());
+                    assertEquals(quote.preDiscountChargeInCents() - quote.discountAmountInCents(), quote.finalChargeInCents());
+                }
+            }
+        }
+
+        verifyRentalAgreementCount(0);
+    }
+
+    @DisplayName("Should reject quotes for unknown tools, out-of-range lengths and invalid discounts")
+    @Test
+    void shouldRejectInvalidQuotes() {
+        LocalDate checkoutDate = LocalDate.of(2015, 9, 3);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ToolRentalService.quote("NOPE", 5, 0, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToolRentalService.quote("JAKD", 0, 0, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToolRentalService.quote("JAKD", 5, 101, checkoutDate, HolidayCalendar.DEFAULT_CALENDAR));
+    }
+}
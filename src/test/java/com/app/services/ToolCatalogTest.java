@@ -0,0 +1,96 @@
+package com.app.services;
+
+import com.app.database.Database;
+import com.app.metrics.Metrics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ToolCatalogTest {
+    @AfterEach
+    void reset() {
+        System.clearProperty("catalog.ttl.seconds");
+        execute("UPDATE tools SET brand = 'Werner' WHERE code = 'LADW'");
+        execute("DELETE FROM tools WHERE code = 'LADX'");
+        ToolCatalog.invalidateAll();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.closeConnection();
+        new File("test.db").delete();
+    }
+
+    @DisplayName("Should read a tool once and then serve it from memory, counting hits and misses as metrics")
+    @Test
+    void shouldCountHitsAndMisses() {
+        ToolCatalog.invalidateAll();
+        long hits = ToolCatalog.getHitCount();
+        long misses = ToolCatalog.getMissCount();
+
+        ToolCatalog.Entry first = ToolCatalog.get("LADW");
+        ToolCatalog.Entry second = ToolCatalog.get("LADW");
+
+        assertEquals("Ladder", first.tool().type);
+        assertEquals(199, first.charges().dailyChargeInCents);
+        assertEquals(first, second);
+        assertEquals(hits + 1, ToolCatalog.getHitCount());
+        assertEquals(misses + 1, ToolCatalog.getMissCount());
+        assertTrue(Metrics.toPrometheus().contains(
+                "app_tool_catalog_lookups_total{result=\"hit\"} " + ToolCatalog.getHitCount()));
+    }
+
+    @DisplayName("Should keep serving a cached tool after the table changes until it is invalidated")
+    @Test
+    void shouldRereadInvalidatedTools() {
+        ToolCatalog.preload();
+        execute("UPDATE tools SET brand = 'Little Giant' WHERE code = 'LADW'");
+
+        assertEquals("Werner", ToolCatalog.get("LADW").tool().brand);
+
+        ToolCatalog.invalidate("LADW");
+        assertEquals("Little Giant", ToolCatalog.get("LADW").tool().brand);
+    }
+
+    @DisplayName("Should re-read entries once they are older than catalog.ttl.seconds")
+    @Test
+    void shouldRereadExpiredTools() {
+        System.setProperty("catalog.ttl.seconds", "0");
+        ToolCatalog.get("LADW");
+        execute("UPDATE tools SET brand = 'Little Giant' WHERE code = 'LADW'");
+        long misses = ToolCatalog.getMissCount();
+
+        assertEquals("Little Giant", ToolCatalog.get("LADW").tool().brand);
+        assertEquals(misses + 1, ToolCatalog.getMissCount());
+    }
+
+    @DisplayName("Should not cache unknown tool codes, so a tool added later is found straight away")
+    @Test
+    void shouldNotCacheUnknownCodes() {
+        long misses = ToolCatalog.getMissCount();
+
+        assertNull(ToolCatalog.get("LADX"));
+        assertNull(ToolCatalog.get("LADX"));
+        assertEquals(misses + 2, ToolCatalog.getMissCount());
+
+        execute("INSERT INTO tools (code, type, brand) VALUES ('LADX', 'Ladder', 'Louisville')");
+        assertEquals("Louisville", ToolCatalog.get("LADX").tool().brand);
+    }
+
+    private static void execute(String sql) {
+        try (Statement stmt = Database.getConnection().createStatement()) {
+            stmt.executeUpdate(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -15,7 +15,7 @@ public class TestUtilities {
 
     public static int getRentalAgreementRowCount() {
         int count = -1;
-        try (Statement stmt = Database.connection.createStatement();
+        try (Statement stmt = Database.getConnection().createStatement();
              ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS total FROM rental_agreements")) {
             if (rs.next()) {
                 count = rs.getInt("total");
@@ -28,7 +28,7 @@ public class TestUtilities {
 
     public static String getFirstRentalAgreementId() {
         String id = "";
-        try (Statement stmt = Database.connection.createStatement();
+        try (Statement stmt = Database.getConnection().createStatement();
              ResultSet rs = stmt.executeQuery("SELECT id FROM rental_agreements")) {
             if (rs.next()) {
                 id = rs.getString("id");
@@ -40,7 +40,7 @@ public class TestUtilities {
     }
 
     public static void deleteAllRentalAgreements() {
-        try (Statement stmt = Database.connection.createStatement()) {
+        try (Statement stmt = Database.getConnection().createStatement()) {
             stmt.executeUpdate("DELETE FROM rental_agreements");
         } catch (SQLException e) {
             System.out.println("Error deleting data from rental_agreements table: " + e.getMessage());